@@ -19,3 +19,7 @@
 # If you keep the line number information, uncomment this to
 # hide the original source file name.
 #-renamesourcefileattribute SourceFile
+
+# Classes generated by ArcthosSmartProcessor are loaded by name
+-keep class * implements com.arcthos.arcthosmart.smartorm.ModelDescriptor { <init>(); }
+-keep class com.arcthos.arcthosmart.generated.ArcthosModelIndex { <init>(); }
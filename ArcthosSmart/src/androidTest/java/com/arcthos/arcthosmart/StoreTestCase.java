@@ -0,0 +1,63 @@
+package com.arcthos.arcthosmart;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import com.arcthos.arcthosmart.smartintegration.helpers.ModelBuildingHelper;
+import com.arcthos.arcthosmart.smartorm.repository.Repository;
+import com.salesforce.androidsdk.analytics.EventBuilderHelper;
+import com.salesforce.androidsdk.smartstore.store.DBHelper;
+import com.salesforce.androidsdk.smartstore.store.DBOpenHelper;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.junit.After;
+import org.junit.Before;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opens an empty SmartStore with the {@link TestAccount} soup registered, and deletes it after each test.
+ */
+public abstract class StoreTestCase {
+    private static final String DB_NAME = "arcthos_test";
+
+    protected Context context;
+    protected SmartStore store;
+    protected Repository<TestAccount> repository;
+    private DBOpenHelper dbOpenHelper;
+    private DBHelper dbHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        EventBuilderHelper.enableDisable(false);
+        context = InstrumentationRegistry.getTargetContext();
+        dbOpenHelper = DBOpenHelper.getOpenHelper(context, DB_NAME, null, null);
+        dbHelper = DBHelper.getInstance(dbOpenHelper.getWritableDatabase(""));
+        store = new SmartStore(dbOpenHelper, "");
+
+        new ModelBuildingHelper<>(TestAccount.class).registerSoup(store);
+        repository = new Repository<TestAccount>(store, TestAccount.class) {
+        };
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.dropAllSoups();
+        dbOpenHelper.close();
+        dbHelper.clearMemoryCache();
+        DBOpenHelper.deleteDatabase(context, DB_NAME, null, null);
+    }
+
+    /**
+     * Creates accounts named "Account 0" to "Account count-1", with as many employees as their number.
+     */
+    protected List<TestAccount> createAccounts(int count) throws Exception {
+        List<TestAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            accounts.add(new TestAccount("Account " + i, i % 2 == 0 ? "Customer" : "Partner", i, i * 10.0));
+        }
+
+        return repository.createAll(accounts);
+    }
+}
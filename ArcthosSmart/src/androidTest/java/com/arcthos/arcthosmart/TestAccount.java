@@ -0,0 +1,87 @@
+package com.arcthos.arcthosmart;
+
+import com.arcthos.arcthosmart.annotations.Index;
+import com.arcthos.arcthosmart.annotations.IndexType;
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@SObject("Account")
+public class TestAccount extends SmartObject {
+    @Index
+    @JsonProperty("Name")
+    private String name;
+
+    @Index
+    @JsonProperty("Type")
+    private String type;
+
+    @Index
+    @JsonProperty("NumberOfEmployees")
+    private Integer numberOfEmployees;
+
+    @Index
+    @JsonProperty("AnnualRevenue")
+    private Double annualRevenue;
+
+    // Numbers in a json1 index are compared without column affinity
+    @Index(type = IndexType.JSON1)
+    @JsonProperty("Rating")
+    private Integer rating;
+
+    // Indexed as 'true'/'false', Repository only finds the ones not deleted
+    @JsonProperty("IsDeleted")
+    private boolean deleted;
+
+    public TestAccount() {
+        super(TestAccount.class);
+    }
+
+    public TestAccount(String name, String type, Integer numberOfEmployees, Double annualRevenue) {
+        this();
+        this.name = name;
+        this.type = type;
+        this.numberOfEmployees = numberOfEmployees;
+        this.annualRevenue = annualRevenue;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public Integer getNumberOfEmployees() {
+        return numberOfEmployees;
+    }
+
+    public void setNumberOfEmployees(Integer numberOfEmployees) {
+        this.numberOfEmployees = numberOfEmployees;
+    }
+
+    public Double getAnnualRevenue() {
+        return annualRevenue;
+    }
+
+    public void setAnnualRevenue(Double annualRevenue) {
+        this.annualRevenue = annualRevenue;
+    }
+
+    public Integer getRating() {
+        return rating;
+    }
+
+    public void setRating(Integer rating) {
+        this.rating = rating;
+    }
+}
@@ -0,0 +1,95 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.salesforce.androidsdk.mobilesync.util.SyncState;
+import com.salesforce.androidsdk.smartstore.store.IndexSpec;
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class SyncStatePrunerTest extends StoreTestCase {
+    private static final List<Class<? extends SmartObject>> MODELS = Collections.<Class<? extends SmartObject>>singletonList(TestAccount.class);
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        SyncState.setupSyncsSoupIfNeeded(store);
+        // Soup left by a model the application no longer has
+        store.registerSoup("Lead", new IndexSpec[]{new IndexSpec("Id", SmartStore.Type.string)});
+    }
+
+    @Test
+    public void syncsNoLongerRunAreDeleted() throws Exception {
+        addSync(null, "Account", SyncState.Status.DONE);
+        addSync(SObjectSyncher.SYNC_NAME_PREFIX + "Account", "Account", SyncState.Status.DONE);
+        addSync(SObjectSyncher.SYNC_NAME_PREFIX + "Lead", "Lead", SyncState.Status.DONE);
+        addSync(SObjectSyncher.SYNC_NAME_PREFIX + "Opportunity", "Opportunity", SyncState.Status.FAILED);
+
+        assertEquals(3, SyncStatePruner.prune(store, MODELS));
+        assertEquals(Collections.singleton(SObjectSyncher.SYNC_NAME_PREFIX + "Account"), syncNames());
+    }
+
+    @Test
+    public void withoutModelsOnlySyncsOfDroppedSoupsAreDeleted() throws Exception {
+        addSync(null, "Account", SyncState.Status.DONE);
+        addSync(SObjectSyncher.SYNC_NAME_PREFIX + "Lead", "Lead", SyncState.Status.DONE);
+        addSync(SObjectSyncher.SYNC_NAME_PREFIX + "Opportunity", "Opportunity", SyncState.Status.DONE);
+
+        assertEquals(1, SyncStatePruner.prune(store, null));
+        assertEquals(new HashSet<>(Arrays.asList(null, SObjectSyncher.SYNC_NAME_PREFIX + "Lead")), syncNames());
+    }
+
+    @Test
+    public void runningAndForeignSyncsAreKept() throws Exception {
+        addSync(null, "Account", SyncState.Status.RUNNING);
+        addSync(SObjectSyncher.SYNC_NAME_PREFIX + "Opportunity", "Opportunity", SyncState.Status.RUNNING);
+        addSync("application:Opportunity", "Opportunity", SyncState.Status.DONE);
+        addSync(null, "Opportunity", SyncState.Status.DONE);
+
+        assertEquals(0, SyncStatePruner.prune(store, MODELS));
+        assertEquals(4, syncCount());
+    }
+
+    private void addSync(String name, String soupName, SyncState.Status status) throws Exception {
+        JSONObject sync = new JSONObject();
+        sync.put(SyncState.SYNC_NAME, name == null ? JSONObject.NULL : name);
+        sync.put(SyncState.SYNC_SOUP_NAME, soupName);
+        sync.put(SyncState.SYNC_STATUS, status.name());
+        store.create(SyncState.SYNCS_SOUP, sync);
+    }
+
+    private Set<String> syncNames() throws Exception {
+        Set<String> names = new HashSet<>();
+        JSONArray rows = store.query(QuerySpec.buildAllQuerySpec(SyncState.SYNCS_SOUP, null, null, Integer.MAX_VALUE), 0);
+
+        for (int i = 0; i < rows.length(); i++) {
+            JSONObject sync = rows.getJSONObject(i);
+            names.add(sync.isNull(SyncState.SYNC_NAME) ? null : sync.getString(SyncState.SYNC_NAME));
+        }
+
+        return names;
+    }
+
+    private int syncCount() {
+        return store.countQuery(QuerySpec.buildAllQuerySpec(SyncState.SYNCS_SOUP, null, null, Integer.MAX_VALUE));
+    }
+}
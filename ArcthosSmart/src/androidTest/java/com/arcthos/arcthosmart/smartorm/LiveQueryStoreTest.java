@@ -0,0 +1,149 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Observers are called on the main looper, the test thread waits for their deliveries.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LiveQueryStoreTest extends StoreTestCase {
+    private static final long TIMEOUT_SECONDS = 5;
+    // Long enough for a debounced refresh to be delivered if there was one
+    private static final long QUIET_MILLIS = 1000;
+
+    private final BlockingQueue<Delivery> deliveries = new LinkedBlockingQueue<>();
+    private LiveQuery<TestAccount> liveQuery;
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        if (liveQuery != null) {
+            liveQuery.stop();
+        }
+        super.tearDown();
+    }
+
+    @Test
+    public void currentResultsAreDeliveredRightAway() throws Exception {
+        List<TestAccount> accounts = createAccounts(4);
+
+        observeCustomers();
+        Delivery delivery = next();
+
+        assertEquals(2, delivery.results.size());
+        assertEquals(Arrays.asList(accounts.get(0).getSoupEntryId(), accounts.get(2).getSoupEntryId()), delivery.diff.getAdded());
+        assertTrue(delivery.diff.getChanged().isEmpty());
+        assertTrue(delivery.diff.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void writesAreDeliveredAsADiff() throws Exception {
+        List<TestAccount> accounts = createAccounts(4);
+        observeCustomers();
+        next();
+
+        TestAccount changed = accounts.get(0);
+        changed.setName("Changed");
+        repository.update(changed);
+        Delivery delivery = next();
+        assertEquals(Collections.singletonList(changed.getSoupEntryId()), delivery.diff.getChanged());
+        assertEquals("Changed", delivery.results.get(0).getName());
+
+        TestAccount added = repository.create(new TestAccount("New", "Customer", 1, null));
+        delivery = next();
+        assertEquals(Collections.singletonList(added.getSoupEntryId()), delivery.diff.getAdded());
+        assertEquals(3, delivery.results.size());
+
+        repository.delete(accounts.get(2));
+        delivery = next();
+        assertEquals(Collections.singletonList(accounts.get(2).getSoupEntryId()), delivery.diff.getRemoved());
+        assertEquals(2, delivery.results.size());
+    }
+
+    @Test
+    public void writeOutsideTheResultsIsNotDelivered() throws Exception {
+        List<TestAccount> accounts = createAccounts(4);
+        observeCustomers();
+        next();
+
+        TestAccount partner = accounts.get(1);
+        partner.setName("Partner");
+        repository.update(partner);
+
+        assertNull(deliveries.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void stoppedQueryIsNotDelivered() throws Exception {
+        createAccounts(2);
+        observeCustomers();
+        next();
+
+        liveQuery.stop();
+        repository.create(new TestAccount("New", "Customer", 1, null));
+
+        assertFalse(liveQuery.isObserved());
+        assertNull(deliveries.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void queryIsObservedOnce() {
+        observeCustomers();
+        observeCustomers();
+    }
+
+    private void observeCustomers() {
+        if (liveQuery == null) {
+            liveQuery = SmartSelect.from(store, TestAccount.class)
+                    .where(Condition.prop("Type").eq("Customer"))
+                    .orderBy("NumberOfEmployees")
+                    .live()
+                    .debounce(0, 0);
+        }
+
+        liveQuery.observe(new LiveQuery.Observer<TestAccount>() {
+            @Override
+            public void onChanged(List<TestAccount> results, LiveQuery.Diff diff) {
+                deliveries.add(new Delivery(results, diff));
+            }
+
+            @Override
+            public void onError(Exception e) {
+                deliveries.add(new Delivery(null, null));
+            }
+        });
+    }
+
+    private Delivery next() throws InterruptedException {
+        Delivery delivery = deliveries.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        assertNotNull("No results delivered", delivery);
+        assertNotNull("Query failed", delivery.results);
+        return delivery;
+    }
+
+    private static class Delivery {
+        final List<TestAccount> results;
+        final LiveQuery.Diff diff;
+
+        Delivery(List<TestAccount> results, LiveQuery.Diff diff) {
+            this.results = results;
+            this.diff = diff;
+        }
+    }
+}
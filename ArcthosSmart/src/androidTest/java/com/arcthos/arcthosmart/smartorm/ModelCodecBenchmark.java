@@ -0,0 +1,121 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.arcthos.arcthosmart.TestAccount;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Objects allocated on the test thread to write models to the JSONObject given to SmartStore and read
+ * back the JSONObject it returns, as Repository does on every create and update, before
+ * {@link ModelCodec} and through the shared codec. The store itself is left out, its response is the
+ * written JSONObject. Counts are logged under the ModelCodecBenchmark tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ModelCodecBenchmark {
+    private static final String TAG = ModelCodecBenchmark.class.getSimpleName();
+    private static final int MODELS = 500;
+
+    @Test
+    public void sharedCodecAllocatesLessThanAMapperPerCall() throws Exception {
+        List<TestAccount> models = new ArrayList<>();
+        for (int i = 0; i < MODELS; i++) {
+            models.add(new TestAccount("Account " + i, i % 2 == 0 ? "Customer" : "Partner", i, i * 10.0));
+        }
+
+        RoundTrip mapperPerCall = new RoundTrip() {
+            @Override
+            public TestAccount run(TestAccount model) throws IOException, JSONException {
+                // Repository.create before ModelCodec
+                ObjectMapper objectMapper = new ObjectMapper();
+                objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
+                StringWriter stringWriter = new StringWriter();
+                objectMapper.writeValue(stringWriter, model);
+                String serializedModel = stringWriter.toString();
+
+                JSONObject json = new JSONObject(serializedModel);
+
+                JSONObject response = json;
+                return objectMapper.readValue(response.toString(), TestAccount.class);
+            }
+        };
+        RoundTrip sharedCodec = new RoundTrip() {
+            @Override
+            public TestAccount run(TestAccount model) throws IOException, JSONException {
+                ModelCodec<TestAccount> codec = ModelCodec.of(TestAccount.class);
+                JSONObject json = codec.toJson(model);
+
+                JSONObject response = json;
+                return codec.read(response);
+            }
+        };
+
+        // Warm up both paths, so class loading and cached serializers aren't counted
+        assertEquals(names(mapperPerCall, models), names(sharedCodec, models));
+
+        Allocations perCall = measure(mapperPerCall, models);
+        Allocations shared = measure(sharedCodec, models);
+
+        Log.i(TAG, "ObjectMapper per call: " + perCall.count / MODELS + " objects, " + perCall.size / MODELS + " bytes per model");
+        Log.i(TAG, "Shared ModelCodec: " + shared.count / MODELS + " objects, " + shared.size / MODELS + " bytes per model");
+        assertTrue("Shared codec allocated " + shared.count + " objects, a mapper per call " + perCall.count,
+                shared.count < perCall.count);
+        assertTrue("Shared codec allocated " + shared.size + " bytes, a mapper per call " + perCall.size,
+                shared.size < perCall.size);
+    }
+
+    private static List<String> names(RoundTrip roundTrip, List<TestAccount> models) throws Exception {
+        List<String> names = new ArrayList<>();
+        for (TestAccount model : models) {
+            names.add(roundTrip.run(model).getName());
+        }
+        return names;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Allocations measure(RoundTrip roundTrip, List<TestAccount> models) throws Exception {
+        List<TestAccount> read = new ArrayList<>(models.size());
+
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+
+        try {
+            for (TestAccount model : models) {
+                read.add(roundTrip.run(model));
+            }
+            return new Allocations(Debug.getThreadAllocCount(), Debug.getThreadAllocSize());
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private interface RoundTrip {
+        TestAccount run(TestAccount model) throws IOException, JSONException;
+    }
+
+    private static class Allocations {
+        final long count;
+        final long size;
+
+        Allocations(long count, long size) {
+            this.count = count;
+            this.size = size;
+        }
+    }
+}
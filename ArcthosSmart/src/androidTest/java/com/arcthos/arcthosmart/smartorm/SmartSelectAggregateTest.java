@@ -0,0 +1,98 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class SmartSelectAggregateTest extends StoreTestCase {
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void countAndExistsFollowTheWhereClause() throws Exception {
+        createAccounts(10);
+
+        assertEquals(10, select().count());
+        assertEquals(5, select().where(Condition.prop("Type").eq("Customer")).count());
+        assertTrue(select().where(Condition.prop("Name").eq("Account 3")).exists());
+        assertFalse(select().where(Condition.prop("Name").eq("Account 10")).exists());
+        assertEquals(0, select().where(Condition.prop("Name").eq("Account 10")).count());
+    }
+
+    @Test
+    public void aggregatesAreComputedInTheDatabase() throws Exception {
+        createAccounts(10);
+
+        assertEquals(45.0, select().sum("NumberOfEmployees"), DELTA);
+        assertEquals(4.5, select().avg("NumberOfEmployees"), DELTA);
+        assertEquals(0.0, select().min("NumberOfEmployees"), DELTA);
+        assertEquals(90.0, select().max("AnnualRevenue"), DELTA);
+        assertEquals(20.0, select().where(Condition.prop("Type").eq("Customer")).sum("NumberOfEmployees"), DELTA);
+    }
+
+    @Test
+    public void aggregateWithoutRowsIsNull() throws Exception {
+        createAccounts(3);
+
+        assertNull(select().where(Condition.prop("Type").eq("Competitor")).sum("NumberOfEmployees"));
+        assertNull(select().where(Condition.prop("Type").eq("Competitor")).avg("NumberOfEmployees"));
+    }
+
+    @Test
+    public void groupByCountsGroupsAndAggregatesPerGroup() throws Exception {
+        createAccounts(10);
+
+        assertEquals(2, select().groupBy("Type").count());
+
+        Map<String, Double> sums = select().groupBy("Type").aggregateByGroup(SmartSelect.Aggregate.SUM, "NumberOfEmployees");
+        assertEquals(2, sums.size());
+        assertEquals(20.0, sums.get("Customer"), DELTA);
+        assertEquals(25.0, sums.get("Partner"), DELTA);
+    }
+
+    @Test
+    public void aggregatesCombineEveryInChunk() throws Exception {
+        List<TestAccount> accounts = createAccounts(2 * SmartSelect.IN_CHUNK_SIZE + 200);
+        List<String> ids = new ArrayList<>();
+        for (TestAccount account : accounts) {
+            ids.add(account.getId());
+        }
+
+        assertEquals(accounts.size(), select().in(ids, "Id").count());
+        assertTrue(select().in(ids, "Id").exists());
+        assertEquals(1200 * 1199 / 2.0, select().in(ids, "Id").sum("NumberOfEmployees"), DELTA);
+        assertEquals(1199 / 2.0, select().in(ids, "Id").avg("NumberOfEmployees"), DELTA);
+        assertEquals(1199.0, select().in(ids, "Id").max("NumberOfEmployees"), DELTA);
+
+        Map<String, Double> averages = select().in(ids, "Id").groupBy("Type")
+                .aggregateByGroup(SmartSelect.Aggregate.AVG, "NumberOfEmployees");
+        assertEquals(599.0, averages.get("Customer"), DELTA);
+        assertEquals(600.0, averages.get("Partner"), DELTA);
+    }
+
+    @Test
+    public void emptyInMatchesNothing() throws Exception {
+        createAccounts(3);
+
+        assertEquals(0, select().in(Collections.<String>emptyList(), "Id").count());
+        assertFalse(select().in(Collections.<String>emptyList(), "Id").exists());
+        assertNull(select().in(Collections.<String>emptyList(), "Id").sum("NumberOfEmployees"));
+        assertEquals(1, select().in(Arrays.asList("unknown", repository.findAll().get(0).getId()), "Id").count());
+    }
+
+    private SmartSelect<TestAccount> select() {
+        return SmartSelect.from(store, TestAccount.class);
+    }
+}
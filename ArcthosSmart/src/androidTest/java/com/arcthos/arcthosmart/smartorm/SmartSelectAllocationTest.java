@@ -0,0 +1,114 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+
+import org.json.JSONArray;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Objects allocated on the test thread to bind every row of a soup, through org.json pages as before
+ * the streaming parser and through {@link SmartSelect#list()}. Counts are logged under the
+ * SmartSelectAllocationTest tag. Native allocations of SQLCipher are not counted by the runtime.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SmartSelectAllocationTest extends StoreTestCase {
+    private static final String TAG = SmartSelectAllocationTest.class.getSimpleName();
+    private static final int ROWS = 1000;
+
+    @Test
+    public void streamingBindingAllocatesLessThanJsonPages() throws Exception {
+        createAccounts(ROWS);
+
+        // Warm up both paths, so class loading and cached codecs aren't counted
+        assertEquals(names(jsonPages()), names(SmartSelect.from(store, TestAccount.class).list()));
+
+        Allocations jsonPages = measure(new Binding() {
+            @Override
+            public List<TestAccount> run() throws Exception {
+                return jsonPages();
+            }
+        });
+        Allocations streaming = measure(new Binding() {
+            @Override
+            public List<TestAccount> run() {
+                return SmartSelect.from(store, TestAccount.class).list();
+            }
+        });
+
+        Log.i(TAG, "org.json pages: " + jsonPages.count / ROWS + " objects, " + jsonPages.size / ROWS + " bytes per row");
+        Log.i(TAG, "Streaming: " + streaming.count / ROWS + " objects, " + streaming.size / ROWS + " bytes per row");
+        assertTrue("Streaming allocated " + streaming.count + " objects, org.json pages " + jsonPages.count,
+                streaming.count < jsonPages.count);
+        assertTrue("Streaming allocated " + streaming.size + " bytes, org.json pages " + jsonPages.size,
+                streaming.size < jsonPages.size);
+    }
+
+    /**
+     * Binding of the paged iterator before the streaming parser: SmartStore builds a JSONObject per soup,
+     * which is written back to a string for Jackson.
+     */
+    private List<TestAccount> jsonPages() throws Exception {
+        QuerySpec querySpec = QuerySpec.buildSmartQuerySpec("SELECT {Account:_soup} FROM {Account} ", SmartSelect.DEFAULT_PAGE_SIZE);
+        ModelCodec<TestAccount> codec = ModelCodec.of(TestAccount.class);
+        List<TestAccount> models = new ArrayList<>();
+
+        for (int pageIndex = 0; ; pageIndex++) {
+            JSONArray rows = store.query(querySpec, pageIndex);
+            for (int i = 0; i < rows.length(); i++) {
+                models.add(codec.read(rows.getJSONArray(i).getJSONObject(0)));
+            }
+
+            if (rows.length() < querySpec.pageSize) {
+                return models;
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Allocations measure(Binding binding) throws Exception {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+
+        try {
+            assertEquals(ROWS, binding.run().size());
+            return new Allocations(Debug.getThreadAllocCount(), Debug.getThreadAllocSize());
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private static List<String> names(List<TestAccount> accounts) {
+        List<String> names = new ArrayList<>();
+        for (TestAccount account : accounts) {
+            names.add(account.getName());
+        }
+        return names;
+    }
+
+    private interface Binding {
+        List<TestAccount> run() throws Exception;
+    }
+
+    private static class Allocations {
+        final long count;
+        final long size;
+
+        Allocations(long count, long size) {
+            this.count = count;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Keyset pages read back to back must give the rows of the plain ordered query.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SmartSelectPageStoreTest extends StoreTestCase {
+
+    @Test
+    public void pagesFollowTheOrderedQuery() throws Exception {
+        createAccounts(25);
+
+        SmartSelect<TestAccount> select = SmartSelect.from(store, TestAccount.class).orderBy("Name");
+        List<List<String>> pages = pageNames(select, 10);
+
+        assertEquals(3, pages.size());
+        assertEquals(5, pages.get(2).size());
+        assertEquals(names(select.list()), flatten(pages));
+    }
+
+    @Test
+    public void descendingPagesFollowTheOrderedQuery() throws Exception {
+        createAccounts(25);
+
+        SmartSelect<TestAccount> select = SmartSelect.from(store, TestAccount.class).orderByDesc("NumberOfEmployees");
+
+        assertEquals(names(select.list()), flatten(pageNames(select, 7)));
+    }
+
+    @Test
+    public void pagesCrossFromNullsToValues() throws Exception {
+        List<TestAccount> accounts = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            accounts.add(new TestAccount("Account " + i, "Customer", i % 2 == 0 ? null : i, null));
+        }
+        repository.createAll(accounts);
+
+        SmartSelect<TestAccount> ascending = SmartSelect.from(store, TestAccount.class).orderBy("NumberOfEmployees");
+        assertEquals(Arrays.asList("Account 0", "Account 2", "Account 4", "Account 1", "Account 3", "Account 5"),
+                flatten(pageNames(ascending, 2)));
+
+        SmartSelect<TestAccount> descending = SmartSelect.from(store, TestAccount.class).orderByDesc("NumberOfEmployees");
+        assertEquals(Arrays.asList("Account 5", "Account 3", "Account 1", "Account 4", "Account 2", "Account 0"),
+                flatten(pageNames(descending, 2)));
+    }
+
+    @Test
+    public void jsonIndexedNumbersSeekInNumericOrder() throws Exception {
+        List<TestAccount> accounts = new ArrayList<>();
+        for (int rating = 12; rating > 0; rating--) {
+            TestAccount account = new TestAccount("Rated " + rating, "Customer", rating, null);
+            account.setRating(rating);
+            accounts.add(account);
+        }
+        repository.createAll(accounts);
+
+        List<Integer> ratings = new ArrayList<>();
+        String pageToken = null;
+        do {
+            Page<TestAccount> page = SmartSelect.from(store, TestAccount.class).orderBy("Rating").page(pageToken, 5);
+            for (TestAccount account : page.getItems()) {
+                ratings.add(account.getRating());
+            }
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12), ratings);
+    }
+
+    @Test
+    public void rowsAddedBeforeTheTokenDontShiftTheNextPage() throws Exception {
+        createAccounts(20);
+
+        Page<TestAccount> first = repository.findAllOrderByAsc("NumberOfEmployees", null, 10);
+        repository.create(new TestAccount("Early", "Customer", -1, null));
+        Page<TestAccount> second = repository.findAllOrderByAsc("NumberOfEmployees", first.getNextPageToken(), 10);
+
+        assertEquals(Integer.valueOf(10), second.getItems().get(0).getNumberOfEmployees());
+        assertFalse(second.hasNextPage());
+    }
+
+    @Test
+    public void pagesMergeEveryInChunk() throws Exception {
+        List<TestAccount> accounts = createAccounts(2 * SmartSelect.IN_CHUNK_SIZE + 200);
+        List<String> ids = new ArrayList<>();
+        for (TestAccount account : accounts) {
+            ids.add(account.getId());
+        }
+
+        SmartSelect<TestAccount> select = SmartSelect.from(store, TestAccount.class)
+                .in(ids, "Id")
+                .orderByDesc("NumberOfEmployees");
+        List<String> names = flatten(pageNames(select, 300));
+
+        List<String> expected = new ArrayList<>();
+        for (int i = accounts.size() - 1; i >= 0; i--) {
+            expected.add("Account " + i);
+        }
+        assertEquals(expected, names);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokenOfAnotherOrderIsRejected() throws Exception {
+        createAccounts(3);
+
+        String pageToken = SmartSelect.from(store, TestAccount.class).orderBy("Name").page(null, 1).getNextPageToken();
+        SmartSelect.from(store, TestAccount.class).orderBy("NumberOfEmployees").page(pageToken, 1);
+    }
+
+    private static List<List<String>> pageNames(SmartSelect<TestAccount> select, int size) {
+        List<List<String>> pages = new ArrayList<>();
+        String pageToken = null;
+
+        do {
+            Page<TestAccount> page = select.page(pageToken, size);
+            pages.add(names(page.getItems()));
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+
+        return pages;
+    }
+
+    private static List<String> names(List<TestAccount> accounts) {
+        List<String> names = new ArrayList<>();
+        for (TestAccount account : accounts) {
+            names.add(account.getName());
+        }
+        return names;
+    }
+
+    private static List<String> flatten(List<List<String>> pages) {
+        List<String> all = new ArrayList<>();
+        for (List<String> page : pages) {
+            all.addAll(page);
+        }
+        return all;
+    }
+}
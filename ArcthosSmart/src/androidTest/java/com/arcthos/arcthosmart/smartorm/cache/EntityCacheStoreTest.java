@@ -0,0 +1,198 @@
+package com.arcthos.arcthosmart.smartorm.cache;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.arcthos.arcthosmart.smartorm.Condition;
+import com.arcthos.arcthosmart.smartorm.ModelCodec;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.arcthos.arcthosmart.smartorm.repository.Repository;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.salesforce.androidsdk.smartstore.store.IndexSpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Invalidation of the cache by the soup change notifications of SmartStore.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EntityCacheStoreTest extends StoreTestCase {
+    private static final long TIMEOUT_SECONDS = 5;
+    // Long enough for a write that doesn't wait for the read to land
+    private static final long WRITE_MILLIS = 500;
+
+    private EntityCache<TestAccount> cache;
+    private TestAccount cached;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        cache = repository.enableEntityCache(10);
+
+        TestAccount created = repository.create(new TestAccount("Acme", "Customer", 10, 100.0));
+        cached = repository.find(created.getId());
+    }
+
+    @Test
+    public void foundModelIsServedFromTheCache() {
+        long hits = cache.getHitCount();
+
+        assertSame(cached, repository.find(cached.getId()));
+        assertSame(cached, repository.findByEntryId(cached.getSoupEntryId()));
+        assertEquals(hits + 2, cache.getHitCount());
+    }
+
+    @Test
+    public void repositoryUpdateReplacesTheCachedModel() throws Exception {
+        cached.setName("Acme Corp");
+        TestAccount written = repository.update(cached);
+
+        TestAccount found = repository.findByEntryId(cached.getSoupEntryId());
+        assertSame(written, found);
+        assertEquals("Acme Corp", found.getName());
+    }
+
+    @Test
+    public void storeUpdateEvictsTheModel() throws Exception {
+        JSONObject json = ModelCodec.of(TestAccount.class).toJson(cached);
+        json.put("Name", "Changed");
+        store.update("Account", json, cached.getSoupEntryId());
+
+        TestAccount found = repository.find(cached.getId());
+        assertNotSame(cached, found);
+        assertEquals("Changed", found.getName());
+    }
+
+    @Test
+    public void upsertByExternalIdEvictsTheModel() throws Exception {
+        // How sync-down writes the records
+        JSONObject json = ModelCodec.of(TestAccount.class).toJson(cached);
+        json.put("Name", "Synced");
+        store.upsert("Account", json, "Id");
+
+        assertEquals("Synced", repository.find(cached.getId()).getName());
+    }
+
+    @Test
+    public void deleteByQueryEvictsTheModel() {
+        assertEquals(1, repository.deleteWhere(Condition.prop("Name").eq("Acme")));
+
+        assertNull(repository.findByEntryId(cached.getSoupEntryId()));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void clearSoupEvictsEveryModel() {
+        store.clearSoup("Account");
+
+        assertEquals(0, cache.size());
+        assertNull(repository.find(cached.getId()));
+    }
+
+    @Test
+    public void writesToAnotherSoupKeepTheCache() throws Exception {
+        store.registerSoup("Other", new IndexSpec[]{new IndexSpec("Name", SmartStore.Type.string)});
+        store.create("Other", new JSONObject().put("Name", "Acme"));
+
+        assertSame(cached, repository.find(cached.getId()));
+    }
+
+    @Test
+    public void disabledCacheReadsTheStore() {
+        repository.disableEntityCache();
+
+        assertNull(repository.getEntityCache());
+        assertNotSame(cached, repository.find(cached.getId()));
+    }
+
+    @Test
+    public void writeDuringACachedReadIsNotUndone() throws Exception {
+        final Repository<SlowAccount> slowRepository = new Repository<SlowAccount>(store, SlowAccount.class) {
+        };
+        slowRepository.enableEntityCache(10);
+        final JSONObject written = ModelCodec.of(TestAccount.class).toJson(cached).put("Name", "Written");
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+
+        SlowAccount.reading = new CountDownLatch(1);
+        SlowAccount.release = new CountDownLatch(1);
+        try {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    slowRepository.find(cached.getId());
+                }
+            });
+            reader.start();
+
+            // The reader is now between its query and the put into the cache
+            assertTrue(SlowAccount.reading.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            SlowAccount.reading = null;
+
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        store.update("Account", written, cached.getSoupEntryId());
+                    } catch (Exception e) {
+                        failure.set(e);
+                    }
+                }
+            });
+            writer.start();
+            writer.join(WRITE_MILLIS);
+
+            SlowAccount.release.countDown();
+            reader.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+            writer.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        } finally {
+            SlowAccount.reading = null;
+            SlowAccount.release.countDown();
+        }
+
+        assertNull(failure.get());
+        assertEquals("Written", slowRepository.find(cached.getId()).getName());
+    }
+
+    /**
+     * Account whose binding waits for the test once armed, to hold a read between its query and the cache put.
+     */
+    @SObject("Account")
+    public static class SlowAccount extends SmartObject {
+        static volatile CountDownLatch reading;
+        static volatile CountDownLatch release;
+
+        @JsonProperty("Name")
+        private String name;
+
+        public SlowAccount() {
+            super(SlowAccount.class);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) throws InterruptedException {
+            CountDownLatch armed = reading;
+            if (armed != null) {
+                armed.countDown();
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+
+            this.name = name;
+        }
+    }
+}
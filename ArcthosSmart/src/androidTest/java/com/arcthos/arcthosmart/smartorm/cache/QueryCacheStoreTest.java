@@ -0,0 +1,109 @@
+package com.arcthos.arcthosmart.smartorm.cache;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import com.arcthos.arcthosmart.StoreTestCase;
+import com.arcthos.arcthosmart.TestAccount;
+import com.arcthos.arcthosmart.smartorm.Condition;
+import com.arcthos.arcthosmart.smartorm.SmartSelect;
+import com.salesforce.androidsdk.smartstore.store.IndexSpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+@RunWith(AndroidJUnit4.class)
+public class QueryCacheStoreTest extends StoreTestCase {
+    private QueryCache cache;
+
+    @Before
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        createAccounts(4);
+        cache = QueryCache.enable(store, QueryCache.DEFAULT_MAX_SIZE);
+    }
+
+    @After
+    @Override
+    public void tearDown() throws Exception {
+        QueryCache.disable(store);
+        super.tearDown();
+    }
+
+    @Test
+    public void repeatedQueryIsServedFromTheCache() {
+        assertEquals(2, customers().list().size());
+        long misses = cache.getMissCount();
+        long hits = cache.getHitCount();
+
+        assertEquals(2, customers().list().size());
+        assertEquals(misses, cache.getMissCount());
+        assertTrue(cache.getHitCount() > hits);
+    }
+
+    @Test
+    public void writeToTheSoupInvalidatesItsQueries() throws Exception {
+        assertEquals(2, customers().count());
+        long misses = cache.getMissCount();
+
+        repository.create(new TestAccount("New", "Customer", 1, null));
+
+        assertEquals(3, customers().count());
+        assertEquals(misses + 1, cache.getMissCount());
+    }
+
+    @Test
+    public void deleteByQueryInvalidatesItsQueries() {
+        assertEquals(2, customers().list().size());
+
+        customers().delete();
+
+        assertTrue(customers().list().isEmpty());
+        assertFalse(customers().exists());
+    }
+
+    @Test
+    public void writeToAnotherSoupKeepsTheQueries() throws Exception {
+        assertEquals(2, customers().count());
+        long misses = cache.getMissCount();
+
+        store.registerSoup("Other", new IndexSpec[]{new IndexSpec("Name", SmartStore.Type.string)});
+        store.create("Other", new JSONObject().put("Name", "Other"));
+
+        assertEquals(2, customers().count());
+        assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    public void queriesInATransactionAreNotKept() {
+        synchronized (store.getDatabase()) {
+            store.beginTransaction();
+            try {
+                assertEquals(2, customers().list().size());
+            } finally {
+                store.endTransaction();
+            }
+        }
+
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void disabledCacheIsBypassed() {
+        QueryCache.disable(store);
+
+        assertEquals(2, customers().list().size());
+        assertEquals(0, cache.getEntryCount());
+        assertNull(QueryCache.get(store));
+    }
+
+    private SmartSelect<TestAccount> customers() {
+        return SmartSelect.from(store, TestAccount.class).where(Condition.prop("Type").eq("Customer"));
+    }
+}
@@ -0,0 +1,20 @@
+package com.arcthos.arcthosmart.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field as indexed in the soup, only these fields and the ones used by the framework can be queried.
+ *
+ * With AUTO, integral fields get an integer column, decimal fields a floating one and fields holding
+ * objects a json1 index. Booleans stay strings since SmartStore projects them as 'true'/'false'
+ * and MobileSync compares __local__ that way.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface Index {
+    IndexType type() default IndexType.AUTO;
+    boolean fullText() default false;
+}
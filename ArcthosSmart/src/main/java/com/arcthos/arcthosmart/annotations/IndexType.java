@@ -0,0 +1,12 @@
+package com.arcthos.arcthosmart.annotations;
+
+/**
+ * Column type of an {@link Index}, AUTO infers it from the java type of the field.
+ */
+public enum IndexType {
+    AUTO,
+    STRING,
+    INTEGER,
+    FLOATING,
+    JSON1
+}
@@ -12,4 +12,10 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 public @interface SObject {
     String value();
+
+    /**
+     * Snapshots every loaded model so Repository.update can skip no-op writes and
+     * sync-up only sends the changed fields, at the cost of one extra conversion per load.
+     */
+    boolean trackChanges() default false;
 }
@@ -6,16 +6,16 @@ import android.os.AsyncTask;
 import android.util.Log;
 
 import com.arcthos.arcthosmart.annotations.SObject;
-import com.arcthos.arcthosmart.annotations.SoqlWhere;
+import com.arcthos.arcthosmart.smartorm.ModelIndex;
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
 import com.arcthos.arcthosmart.smartorm.SmartObject;
-import com.salesforce.androidsdk.mobilesync.util.Constants;
+import com.salesforce.androidsdk.accounts.UserAccount;
+import com.salesforce.androidsdk.mobilesync.app.MobileSyncSDKManager;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Enumeration;
@@ -37,7 +37,7 @@ public abstract class BaseGeneralSync {
 
     private Context context;
     private SyncCallback syncCallback;
-    private String formattedLastUpdate;
+    private volatile SyncPlanner lastSyncPlanner;
 
     public BaseGeneralSync(Context context, SyncCallback syncCallback) {
         this.context = context;
@@ -71,9 +71,6 @@ public abstract class BaseGeneralSync {
     }
 
     public synchronized void performSync() {
-        String lastUpdate = PreferencesManager.getInstance().getStringValue(LAST_SYNC);
-        formattedLastUpdate = formatLastUpdate(lastUpdate);
-
         syncObjects();
         new AsyncTask<Void, Void, Void>() {
             @Override
@@ -89,6 +86,10 @@ public abstract class BaseGeneralSync {
 
     protected abstract void syncChainedObjects();
 
+    /**
+     * @deprecated syncs are incremental per model, from the maxTimeStamp of their named sync
+     */
+    @Deprecated
     public void setLastDateUpdate() {
         SimpleDateFormat sdf = new SimpleDateFormat("dd-MM-yyyy HH:mm:ss");
         sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
@@ -98,130 +99,115 @@ public abstract class BaseGeneralSync {
 
     protected void syncObject(Class<? extends SmartObject> model) {
         SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), syncCallback, false);
-        String where = Constants.LAST_MODIFIED_DATE + ">" + formattedLastUpdate + " " + getCustomWhere(model);
-        sObjectSyncher.setWhere(where);
+        sObjectSyncher.setIncrementalWhere(getFilter(model));
 
         new SyncObjectTask(sObjectSyncher).executeOnExecutor(THREAD_POOL_EXECUTOR);
     }
 
     protected void syncFullObject(Class<? extends SmartObject> model) {
         SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), syncCallback, false);
-        String where = getCustomWhere(model);
-
-        if (where.startsWith("AND ")) {
-            where = where.substring(3, where.length());
-        }
-
-        if (where.startsWith("OR ")) {
-            where = where.substring(2, where.length());
-        }
-
-        sObjectSyncher.setWhere(where);
+        sObjectSyncher.setWhere(getFilter(model));
 
         new SyncObjectTask(sObjectSyncher).executeOnExecutor(THREAD_POOL_EXECUTOR);
     }
 
     protected void syncDownFullObject(Class<? extends SmartObject> model) {
         SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), syncCallback, false);
-        String where = getCustomWhere(model);
-
-        if (where.startsWith("AND ")) {
-            where = where.substring(3, where.length());
-        }
-
-        if (where.startsWith("OR ")) {
-            where = where.substring(2, where.length());
-        }
-
-        sObjectSyncher.setWhere(where);
+        sObjectSyncher.setWhere(getFilter(model));
 
         new SyncDownObjectTask(sObjectSyncher).executeOnExecutor(THREAD_POOL_EXECUTOR);
     }
 
     protected void syncUnitaryObject(Class<? extends SmartObject> model) {
-        String lastUpdate = PreferencesManager.getInstance().getStringValue(LAST_SYNC);
-        formattedLastUpdate = formatLastUpdate(lastUpdate);
-
         SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), syncCallback, false);
-        String where = Constants.LAST_MODIFIED_DATE + ">" + formattedLastUpdate + " " + getCustomWhere(model);
-        sObjectSyncher.setWhere(where);
+        sObjectSyncher.setIncrementalWhere(getFilter(model));
 
         new SyncObjectTask(sObjectSyncher).executeOnExecutor(THREAD_POOL_EXECUTOR);
     }
 
     protected void syncDownObject(Class<? extends SmartObject> model) {
-        String lastUpdate = PreferencesManager.getInstance().getStringValue(LAST_SYNC);
-        formattedLastUpdate = formatLastUpdate(lastUpdate);
-
         SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), syncCallback, false);
-        String where = Constants.LAST_MODIFIED_DATE + ">" + formattedLastUpdate + " " + getCustomWhere(model);
-        sObjectSyncher.setWhere(where);
+        sObjectSyncher.setIncrementalWhere(getFilter(model));
 
         new SyncDownObjectTask(sObjectSyncher).executeOnExecutor(THREAD_POOL_EXECUTOR);
     }
 
+    /**
+     * Syncs the models in dependency order through a {@link SyncPlanner}, in parallel where they don't
+     * depend on each other.
+     */
     protected void syncChainedObjects(final List<Class<? extends SmartObject>> models) {
         if (models == null) return;
         if (models.isEmpty()) return;
 
-        final Class<? extends SmartObject> model = models.get(0);
-
-        SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), syncCallback, true);
-        String where = Constants.LAST_MODIFIED_DATE + ">" + formattedLastUpdate + " " + getCustomWhere(model);
-        sObjectSyncher.setWhere(where);
-
-        if (sObjectSyncher.hasSoup()) {
-            sObjectSyncher.chainedSyncUpAndDown(new ChainedCallback() {
-                @Override
-                public void onFinish() {
-                    List<Class<? extends SmartObject>> newModels = new ArrayList<>();
-                    if (models.size() > 1) {
-                        for (int i = 1; i < models.size(); i++) {
-                            newModels.add(models.get(i));
-                        }
-                    }
-                    syncChainedObjects(newModels);
-                }
-            });
-        } else {
-            sObjectSyncher.syncDown(null);
-            List<Class<? extends SmartObject>> newModels = new ArrayList<>();
-            if (models.size() > 1) {
-                for (int i = 1; i < models.size(); i++) {
-                    newModels.add(models.get(i));
-                }
+        SyncPlanner syncPlanner = new SyncPlanner(models, new SyncPlanner.SyncherFactory() {
+            @Override
+            public SObjectSyncher<?> create(Class<? extends SmartObject> model, SyncCallback callback) {
+                SObjectSyncher sObjectSyncher = new SObjectSyncher(model, context.getResources(), callback, true);
+                sObjectSyncher.setIncrementalWhere(getFilter(model));
+                return sObjectSyncher;
             }
-            syncChainedObjects(newModels);
-        }
+        }, syncCallback);
+
+        lastSyncPlanner = syncPlanner;
+        syncPlanner.run(null);
+    }
+
+    /**
+     * @return the planner of the last chained sync, with the timeline of each model
+     */
+    public SyncPlanner getLastSyncPlanner() {
+        return lastSyncPlanner;
     }
 
     private String getCustomWhere(Class<? extends SmartObject> model) {
-        String where = "";
+        return ModelMetadata.of(model).getCustomWhere();
+    }
 
-        List<Field> fields = Arrays.asList(model.getDeclaredFields());
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(SoqlWhere.class)) {
-                //TODO: validate if starts with an AND or OR than put or not the AND word
-                where = invoke(field.getName(), model);
-            }
+    /**
+     * @return the custom where of the model as a standalone condition
+     */
+    private String getFilter(Class<? extends SmartObject> model) {
+        String where = getCustomWhere(model);
+
+        if (where.startsWith("AND ")) {
+            where = where.substring(3, where.length());
+        }
+
+        if (where.startsWith("OR ")) {
+            where = where.substring(2, where.length());
         }
 
         return where;
     }
 
-    private String invoke(String field, Class<? extends SmartObject> model) {
-        try {
-            return (String) model.getField(field).get(null);
-        } catch (Exception e) {
-            return "";
-        }
+    /**
+     * @deprecated syncs are incremental per model, see {@link SObjectSyncher#setIncrementalWhere(String)}
+     */
+    @Deprecated
+    public String getFormattedLastUpdate() {
+        return formatLastUpdate(PreferencesManager.getInstance().getStringValue(LAST_SYNC));
     }
 
-    public String getFormattedLastUpdate() {
-        return formattedLastUpdate;
+    /**
+     * Deletes the sync states no longer used by the models, see {@link SyncStatePruner}.
+     *
+     * @return the number of deleted sync states
+     */
+    public int pruneSyncStates() {
+        UserAccount currentUser = MobileSyncSDKManager.getInstance().getUserAccountManager().getCurrentUser();
+        SmartStore smartStore = MobileSyncSDKManager.getInstance().getSmartStore(currentUser);
+        ModelIndex modelIndex = ModelMetadata.getModelIndex();
+
+        return SyncStatePruner.prune(smartStore, modelIndex != null ? modelIndex.getModels() : null);
     }
 
     public int getAmountSObjectClasses() {
+        ModelIndex modelIndex = ModelMetadata.getModelIndex();
+        if (modelIndex != null) {
+            return modelIndex.getModels().size();
+        }
+
         int sObjectsAmount = 0;
 
         ApplicationInfo applicationInfo = context.getApplicationInfo();
@@ -0,0 +1,106 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import com.arcthos.arcthosmart.smartorm.SmartObjectConstants;
+import com.salesforce.androidsdk.mobilesync.manager.SyncManager;
+import com.salesforce.androidsdk.mobilesync.target.BatchSyncUpTarget;
+import com.salesforce.androidsdk.mobilesync.util.Constants;
+import com.salesforce.androidsdk.mobilesync.util.SyncState;
+import com.salesforce.androidsdk.rest.CompositeResponse.CompositeSubResponse;
+import com.salesforce.androidsdk.rest.RestRequest;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Batch version of {@link ChangedFieldsSyncUpTarget}: records are sent up to maxBatchSize at a time through
+ * one composite request, locally updated records with only the fields recorded as changed.
+ *
+ * Records the server rejects stay local with the error in __last_error__, those of the current run are
+ * listed by {@link #getFailedEntryIds()}.
+ */
+public class ChangedFieldsBatchSyncUpTarget extends BatchSyncUpTarget {
+    private static final String LOCAL_ID_PREFIX = "local_";
+
+    // Records left out of the composite request because none of their changed fields is synced up
+    private final Set<String> unchangedIds = new HashSet<>();
+    private final Set<Long> failedEntryIds = Collections.synchronizedSet(new HashSet<Long>());
+
+    public ChangedFieldsBatchSyncUpTarget(List<String> createFieldlist, List<String> updateFieldlist, int maxBatchSize) {
+        super(createFieldlist, updateFieldlist, maxBatchSize);
+    }
+
+    public ChangedFieldsBatchSyncUpTarget(JSONObject target) throws JSONException {
+        super(target);
+    }
+
+    @Override
+    protected RestRequest buildRequestForRecord(String apiVersion, JSONObject record, List<String> fieldlist) throws JSONException {
+        if (!isDirty(record) || isLocallyDeleted(record) || isLocallyCreated(record)) {
+            return super.buildRequestForRecord(apiVersion, record, fieldlist);
+        }
+
+        List<String> changedFieldlist = ChangedFieldsSyncUpTarget.getChangedFieldlist(record, updateFieldlist != null ? updateFieldlist : fieldlist);
+        if (changedFieldlist == null) {
+            return super.buildRequestForRecord(apiVersion, record, fieldlist);
+        }
+
+        String objectId = record.getString(getIdFieldName());
+        if (changedFieldlist.isEmpty()) {
+            unchangedIds.add(objectId);
+            return null;
+        }
+
+        String objectType = (String) SmartStore.project(record, Constants.SOBJECT_TYPE);
+        return RestRequest.getRequestForUpdate(apiVersion, objectType, objectId,
+                buildFieldsMap(record, changedFieldlist, getIdFieldName(), getModificationDateFieldName()));
+    }
+
+    @Override
+    protected boolean updateRecordInLocalStore(SyncManager syncManager, String soupName, JSONObject record, SyncState.MergeMode mergeMode, Map<String, String> refIdToServerId, CompositeSubResponse response, boolean isReRun) throws JSONException, IOException {
+        if (response == null && unchangedIds.remove(record.getString(getIdFieldName()))) {
+            cleanAndSaveInLocalStore(syncManager, soupName, record);
+            return false;
+        }
+
+        return super.updateRecordInLocalStore(syncManager, soupName, record, mergeMode, refIdToServerId, response, isReRun);
+    }
+
+    @Override
+    protected void saveRecordToLocalStoreWithError(SyncManager syncManager, String soupName, JSONObject record, String error) throws JSONException {
+        // BatchSyncUpTarget gives new records a local Id to reference them in the composite request,
+        // chained syncs would take it for the Salesforce Id
+        String localId = LOCAL_ID_PREFIX + record.optLong(SmartStore.SOUP_ENTRY_ID);
+        if (isLocallyCreated(record) && localId.equals(record.optString(getIdFieldName()))) {
+            record.put(getIdFieldName(), JSONObject.NULL);
+        }
+
+        super.saveRecordToLocalStoreWithError(syncManager, soupName, record, error);
+
+        if (error != null) {
+            failedEntryIds.add(record.getLong(SmartStore.SOUP_ENTRY_ID));
+        }
+    }
+
+    /**
+     * @return _soupEntryId of the records the server rejected in the sync up run by this target
+     */
+    public Set<Long> getFailedEntryIds() {
+        synchronized (failedEntryIds) {
+            return new HashSet<>(failedEntryIds);
+        }
+    }
+
+    @Override
+    protected void cleanRecord(JSONObject record) throws JSONException {
+        super.cleanRecord(record);
+        record.remove(SmartObjectConstants.CHANGED_FIELDS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import com.arcthos.arcthosmart.smartorm.SmartObjectConstants;
+import com.salesforce.androidsdk.mobilesync.manager.SyncManager;
+import com.salesforce.androidsdk.mobilesync.target.SyncUpTarget;
+import com.salesforce.androidsdk.mobilesync.util.Constants;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+import com.salesforce.androidsdk.util.JSONObjectHelper;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sync-up target sending, for locally updated records, only the fields recorded as changed by
+ * Repository.update on models tracking changes. Other records are sent with the whole field list.
+ */
+public class ChangedFieldsSyncUpTarget extends SyncUpTarget {
+
+    public ChangedFieldsSyncUpTarget() {
+        super();
+    }
+
+    public ChangedFieldsSyncUpTarget(JSONObject target) throws JSONException {
+        super(target);
+    }
+
+    @Override
+    public int updateOnServer(SyncManager syncManager, JSONObject record, List<String> fieldlist) throws JSONException, IOException {
+        List<String> changedFieldlist = getChangedFieldlist(record, updateFieldlist != null ? updateFieldlist : fieldlist);
+        if (changedFieldlist == null) {
+            return super.updateOnServer(syncManager, record, fieldlist);
+        }
+
+        if (changedFieldlist.isEmpty()) {
+            // Only fields that are never synced up changed
+            return HttpURLConnection.HTTP_NO_CONTENT;
+        }
+
+        String objectType = (String) SmartStore.project(record, Constants.SOBJECT_TYPE);
+        String objectId = record.getString(getIdFieldName());
+        return updateOnServer(syncManager, objectType, objectId,
+                buildFieldsMap(record, changedFieldlist, getIdFieldName(), getModificationDateFieldName()));
+    }
+
+    /**
+     * @return the fields of the list recorded as changed, null when the record doesn't track changes
+     */
+    static List<String> getChangedFieldlist(JSONObject record, List<String> fieldlist) throws JSONException {
+        JSONArray changedFields = record.optJSONArray(SmartObjectConstants.CHANGED_FIELDS);
+        if (changedFields == null) {
+            return null;
+        }
+
+        List<String> changed = JSONObjectHelper.toList(changedFields);
+        List<String> changedFieldlist = new ArrayList<>();
+
+        for (String field : fieldlist) {
+            int dot = field.indexOf('.');
+            if (changed.contains(dot == -1 ? field : field.substring(0, dot))) {
+                changedFieldlist.add(field);
+            }
+        }
+
+        return changedFieldlist;
+    }
+
+    @Override
+    protected void cleanRecord(JSONObject record) throws JSONException {
+        super.cleanRecord(record);
+        record.remove(SmartObjectConstants.CHANGED_FIELDS);
+    }
+}
@@ -0,0 +1,39 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import com.salesforce.androidsdk.mobilesync.target.SoqlSyncDownTarget;
+import com.salesforce.androidsdk.mobilesync.util.Constants;
+import com.salesforce.androidsdk.mobilesync.util.SOQLMutator;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Date;
+
+/**
+ * SOQL sync down target resuming at LastModifiedDate >= maxTimeStamp instead of >.
+ *
+ * A run cut by the query limit, or stopped between two pages, can end in the middle of records sharing
+ * the same LastModifiedDate: the ones it didn't get are fetched by the next run, along with those it
+ * already saved, which OVERWRITE merges again. The query must be ordered by LastModifiedDate and its limit
+ * greater than the number of records modified in the same millisecond, or runs won't move forward.
+ */
+public class IncrementalSoqlSyncDownTarget extends SoqlSyncDownTarget {
+
+    public IncrementalSoqlSyncDownTarget(String query) {
+        super(query);
+    }
+
+    public IncrementalSoqlSyncDownTarget(JSONObject target) throws JSONException {
+        super(target);
+    }
+
+    @Override
+    public String getQuery(long maxTimeStamp) {
+        if (maxTimeStamp <= 0) {
+            return super.getQuery(maxTimeStamp);
+        }
+
+        String predicate = getModificationDateFieldName() + " >= " + Constants.TIMESTAMP_FORMAT.format(new Date(maxTimeStamp));
+        return new SOQLMutator(super.getQuery(0)).addWherePredicates(predicate).asBuilder().build();
+    }
+}
@@ -4,20 +4,17 @@ import android.content.res.Resources;
 import android.util.Log;
 
 import com.arcthos.arcthosmart.R;
-import com.arcthos.arcthosmart.annotations.DestinationLocalParent;
-import com.arcthos.arcthosmart.annotations.SObject;
-import com.arcthos.arcthosmart.annotations.SourceLocalParent;
 import com.arcthos.arcthosmart.smartintegration.helpers.ModelBuildingHelper;
 import com.arcthos.arcthosmart.smartorm.Condition;
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
 import com.arcthos.arcthosmart.smartorm.SmartObject;
 import com.arcthos.arcthosmart.smartorm.SmartObjectConstants;
 import com.arcthos.arcthosmart.smartorm.SmartSelect;
-import com.arcthos.arcthosmart.smartorm.repository.Repository;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.salesforce.androidsdk.accounts.UserAccount;
 import com.salesforce.androidsdk.mobilesync.app.MobileSyncSDKManager;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.mobilesync.manager.SyncManager;
+import com.salesforce.androidsdk.mobilesync.target.BatchSyncUpTarget;
 import com.salesforce.androidsdk.mobilesync.target.SoqlSyncDownTarget;
 import com.salesforce.androidsdk.mobilesync.target.SyncDownTarget;
 import com.salesforce.androidsdk.mobilesync.target.SyncUpTarget;
@@ -30,30 +27,30 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.Set;
 
 /**
  * Created by Vinicius Damiati on 11-Oct-17.
  */
 
 public class SObjectSyncher<T extends SmartObject> {
+    public static final String SYNC_NAME_PREFIX = "arcthos:";
+    public static final String FULL_SYNC_NAME_PREFIX = SYNC_NAME_PREFIX + "full:";
+    public static final String SYNC_UP_NAME_PREFIX = SYNC_NAME_PREFIX + "up:";
+
     private final UserAccount currentUser;
     private final SmartStore smartStore;
     private final SyncManager syncMgr;
     private final Class<T> type;
     private final ModelBuildingHelper modelBuildingHelper;
     private String where;
-    private long syncId = -1;
+    private boolean incremental;
+    private int syncUpBatchSize;
     private final SyncCallback syncCallback;
     private final Resources resources;
     private final boolean chainedSync;
@@ -67,28 +64,71 @@ public class SObjectSyncher<T extends SmartObject> {
         this.resources = resources;
         this.chainedSync = chainedSync;
         this.modelBuildingHelper = new ModelBuildingHelper(type);
-        this.where = getDefaultWhere();
+        // Same sync on every run, see setIncrementalWhere
+        this.where = "";
+        this.incremental = true;
+        this.syncUpBatchSize = resources.getInteger(R.integer.sync_up_batch_size);
         MobileSyncSDKManager.getInstance().getUserAccountManager().getCurrentAccount();
     }
 
-    private String getDefaultWhere() {
-        Locale locale = resources.getConfiguration().locale;
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", locale);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+    public String getWhere() {
+        return where;
+    }
 
-        String now = sdf.format(new Date());
+    public void setWhere(String where) {
+        this.where = where;
+        this.incremental = false;
+    }
 
-        String where = Constants.LAST_MODIFIED_DATE + ">" + now + " ";
+    /**
+     * Syncs down through the sync named {@link #getSyncName()} instead: the first run fetches every record
+     * matching the filter, the next ones reSync it so MobileSync only fetches the records modified since
+     * the newest one it saved (SyncState.maxTimeStamp).
+     *
+     * @param filter SOQL condition on the records to keep, without any LastModifiedDate condition, may be empty
+     */
+    public void setIncrementalWhere(String filter) {
+        this.where = filter == null ? "" : filter.trim();
+        this.incremental = true;
+    }
 
-        return where;
+    public boolean isIncremental() {
+        return incremental;
     }
 
-    public String getWhere() {
-        return where;
+    /**
+     * @return name of the incremental sync down of this model
+     */
+    public String getSyncName() {
+        return SYNC_NAME_PREFIX + modelBuildingHelper.getSObjectName();
     }
 
-    public void setWhere(String where) {
-        this.where = where;
+    /**
+     * @return name of the sync down of this model run with {@link #setWhere(String)}, which always fetches
+     * every record matching the condition
+     */
+    public String getFullSyncName() {
+        return FULL_SYNC_NAME_PREFIX + modelBuildingHelper.getSObjectName();
+    }
+
+    public String getSyncUpName() {
+        return SYNC_UP_NAME_PREFIX + modelBuildingHelper.getSObjectName();
+    }
+
+    /**
+     * @param syncUpBatchSize records sent per composite request on sync up, from 1 to
+     *                        {@link BatchSyncUpTarget#MAX_SUB_REQUESTS_COMPOSITE_API}
+     */
+    public void setSyncUpBatchSize(int syncUpBatchSize) {
+        if (syncUpBatchSize < 1 || syncUpBatchSize > BatchSyncUpTarget.MAX_SUB_REQUESTS_COMPOSITE_API) {
+            throw new IllegalArgumentException("Sync up batch size must be between 1 and " + BatchSyncUpTarget.MAX_SUB_REQUESTS_COMPOSITE_API + ".");
+        }
+
+        this.syncUpBatchSize = syncUpBatchSize;
+    }
+
+    public int getSyncUpBatchSize() {
+        return syncUpBatchSize;
     }
 
     public boolean hasSoup() {
@@ -100,23 +140,23 @@ public class SObjectSyncher<T extends SmartObject> {
     }
 
     public synchronized void syncUp() {
-        syncUp(false, null, null);
+        syncUp(false, null);
     }
 
     public synchronized void syncUpAndDown() {
-        syncUp(true, null, null);
+        syncUp(true, null);
     }
 
 
     private synchronized void syncUp(final boolean doSyncdownAfter) {
-        syncUp(doSyncdownAfter, null, null);
+        syncUp(doSyncdownAfter, null);
     }
 
     public synchronized void chainedSyncUpAndDown(ChainedCallback chainedCallback) {
-        syncUp(true, null, chainedCallback);
+        syncUp(true, chainedCallback);
     }
 
-    private synchronized void syncUp(final boolean doSyncdownAfter, final String id, final ChainedCallback chainedCallback) {
+    private synchronized void syncUp(final boolean doSyncdownAfter, final ChainedCallback chainedCallback) {
         List<String> fieldsSyncUp = modelBuildingHelper.getFieldsToSyncUp();
         List<String> fieldsSyncUpForUpdate = modelBuildingHelper.getFieldsToSyncUpForUpdate();
         if (chainedSync) {
@@ -127,42 +167,39 @@ public class SObjectSyncher<T extends SmartObject> {
             }
         }
 
-        SyncUpTarget target;
-        JSONObject object = null;
-        if (id == null) {
-            target = new SyncUpTarget();
-        } else {
-            object = SmartSelect.from(smartStore, type)
-                    .where(Condition.prop(Constants.ID).eq(id))
-                    .rawFirst();
-            try {
-                target = new SyncUpTarget(object);
-            } catch (JSONException e) {
-                target = new SyncUpTarget();
-            }
-        }
+        final SyncUpTarget target = new ChangedFieldsBatchSyncUpTarget(fieldsSyncUp, fieldsSyncUpForUpdate, syncUpBatchSize);
 
         final SyncOptions options = SyncOptions.optionsForSyncUp(fieldsSyncUp, fieldsSyncUpForUpdate, SyncState.MergeMode.OVERWRITE);
 
         try {
-            final JSONObject finalObject = object;
-            syncMgr.syncUp(target, options, modelBuildingHelper.getSObjectName(), new SyncManager.SyncUpdateCallback() {
+            String syncUpName = getSyncUpName();
+            SyncState syncUp = syncMgr.getSyncStatus(syncUpName);
+            if (syncUp != null && !syncUp.isRunning() && !hasSameSpec(syncUp, target.asJSON(), options, modelBuildingHelper.getSObjectName())) {
+                syncMgr.deleteSync(syncUpName);
+                syncUp = null;
+            }
+
+            if (syncUp == null) {
+                syncMgr.createSyncUp(target, options, modelBuildingHelper.getSObjectName(), syncUpName);
+            }
+
+            syncMgr.reSync(syncUpName, new SyncManager.SyncUpdateCallback() {
                 @Override
                 public void onUpdate(SyncState sync) {
                     if (SyncState.Status.DONE.equals(sync.getStatus()) || SyncState.Status.FAILED.equals(sync.getStatus())) {
                         try {
                             if (SyncState.Status.DONE.equals(sync.getStatus()) && doSyncdownAfter) {
+                                notifyFailedRecords(sync);
                                 syncCallback.onUpSuccess(sync, sync.getStatus(), sync.getSoupName());
 
-                                if (id != null) {
-                                    where = Constants.ID + "='" + id + "'";
-                                }
-
                                 syncDown(chainedCallback);
                             } else if (SyncState.Status.DONE.equals(sync.getStatus())) {
+                                notifyFailedRecords(sync);
                                 syncCallback.onUpSuccess(sync, sync.getStatus(), sync.getSoupName());
                             } else if (SyncState.Status.FAILED.equals(sync.getStatus())) {
-                                syncCallback.onUpFailure(sync, finalObject);
+                                notifyFailedRecords(sync);
+                                syncCallback.onUpFailure(sync, null);
+                                if (chainedCallback != null) chainedCallback.onFinish();
                             }
                         } catch (Exception e) {
                             Log.e(type.getSimpleName(), e.getMessage(), e);
@@ -172,16 +209,52 @@ public class SObjectSyncher<T extends SmartObject> {
             });
         } catch (JSONException e) {
             Log.e(type.getSimpleName(), "JSONException occurred while parsing", e);
+            syncCallback.onUpFailure(null, null);
+            if (chainedCallback != null) chainedCallback.onFinish();
         } catch (SyncManager.MobileSyncException e) {
             Log.e(type.getSimpleName(), "SmartSyncException occurred while attempting to sync up", e);
+            syncCallback.onUpFailure(null, null);
+            if (chainedCallback != null) chainedCallback.onFinish();
         } catch (Exception e) {
             Log.e(type.getSimpleName(), "Exception occurred while attempting to sync up", e);
+            syncCallback.onUpFailure(null, null);
+            if (chainedCallback != null) chainedCallback.onFinish();
+        }
+    }
+
+    /**
+     * Calls onUpFailure with each record the server rejected during this sync up, its error is in __last_error__.
+     * Errors left by previous runs aren't reported again.
+     */
+    private void notifyFailedRecords(SyncState sync) {
+        if (!(sync.getTarget() instanceof ChangedFieldsBatchSyncUpTarget)) {
+            return;
+        }
+
+        Set<Long> failedEntryIds = ((ChangedFieldsBatchSyncUpTarget) sync.getTarget()).getFailedEntryIds();
+        if (failedEntryIds.isEmpty()) {
+            return;
+        }
+
+        try {
+            JSONArray models = SmartSelect.from(smartStore, type)
+                    .where(Condition.prop(SmartObjectConstants.SOUP_ENTRY_ID).in(failedEntryIds))
+                    .rawList();
+            if (models == null) {
+                return;
+            }
+
+            for (int i = 0; i < models.length(); i++) {
+                syncCallback.onUpFailure(sync, models.getJSONArray(i).getJSONObject(0));
+            }
+        } catch (JSONException e) {
+            Log.e(type.getSimpleName(), "JSONException occurred while reading the records that failed to sync up", e);
         }
     }
 
     public synchronized void syncDown(final ChainedCallback chainedCallback) {
         String sObjectName = modelBuildingHelper.getSObjectName();
-        smartStore.registerSoup(sObjectName, modelBuildingHelper.getIndexSpecs());
+        modelBuildingHelper.registerSoup(smartStore);
         final SyncManager.SyncUpdateCallback callback = new SyncManager.SyncUpdateCallback() {
             @Override
             public void onUpdate(SyncState sync) {
@@ -195,130 +268,242 @@ public class SObjectSyncher<T extends SmartObject> {
             }
         };
         try {
-            if (syncId == -1) {
-                List<String> fieldsSyncDown = modelBuildingHelper.getFieldsToSyncDown();
-
-                final SyncOptions options = SyncOptions.optionsForSyncDown(SyncState.MergeMode.OVERWRITE);
-                final String soqlQuery = SOQLBuilder.
-                        getInstanceWithFields(fieldsSyncDown)
-                        .from(sObjectName)
-                        .where(where)
-                        .limit(resources.getInteger(R.integer.soql_query_limit)).build();
-                Log.d(sObjectName + "::QUERY SOQL:", soqlQuery);
-                final SyncDownTarget target = new SoqlSyncDownTarget(soqlQuery);
-
-                try {
-                    final SyncState sync = syncMgr.syncDown(target, options, sObjectName, callback);
-                    syncId = sync.getId();
-                } catch (Exception ex) {
-                    Log.e(type.getSimpleName(), ex.getMessage(), ex);
-                }
+            if (incremental) {
+                syncDownIncremental(sObjectName, callback);
             } else {
-                syncMgr.reSync(syncId, callback);
+                syncDownFull(sObjectName, callback);
             }
         } catch (JSONException e) {
             Log.e(type.getSimpleName(), "JSONException occurred while parsing", e);
+            syncCallback.onDownFailure(null);
+            if (chainedCallback != null) chainedCallback.onFinish();
         } catch (SyncManager.MobileSyncException e) {
             Log.e(type.getSimpleName(), "SmartSyncException occurred while attempting to sync down", e);
+            syncCallback.onDownFailure(null);
+            if (chainedCallback != null) chainedCallback.onFinish();
+        } catch (Exception e) {
+            Log.e(type.getSimpleName(), "Exception occurred while attempting to sync down", e);
+            syncCallback.onDownFailure(null);
+            if (chainedCallback != null) chainedCallback.onFinish();
+        }
+    }
+
+    /**
+     * Re-runs the named sync, its target then adds LastModifiedDate >= maxTimeStamp to the query.
+     */
+    private void syncDownIncremental(String sObjectName, SyncManager.SyncUpdateCallback callback) throws JSONException {
+        String syncName = getSyncName();
+        getSyncDown(syncName, sObjectName);
+        syncMgr.reSync(syncName, callback);
+    }
+
+    /**
+     * Re-runs the named full sync from scratch, so that it fetches every record matching the condition.
+     */
+    private void syncDownFull(String sObjectName, SyncManager.SyncUpdateCallback callback) throws JSONException {
+        String syncName = getFullSyncName();
+        SyncState sync = getSyncDown(syncName, sObjectName);
+
+        if (sync.getMaxTimeStamp() != -1 && !sync.isRunning()) {
+            sync.setMaxTimeStamp(-1);
+            sync.save(smartStore);
         }
+
+        syncMgr.reSync(syncName, callback);
     }
 
+    /**
+     * @return the sync down with this name, created once and only created again when its query changed
+     */
+    private SyncState getSyncDown(String syncName, String sObjectName) throws JSONException {
+        final SyncOptions options = SyncOptions.optionsForSyncDown(SyncState.MergeMode.OVERWRITE);
+        final String soqlQuery = buildSyncDownQuery(sObjectName);
+        final SyncDownTarget target = incremental ? new IncrementalSoqlSyncDownTarget(soqlQuery) : new SoqlSyncDownTarget(soqlQuery);
+
+        SyncState sync = syncMgr.getSyncStatus(syncName);
+        if (sync != null && !sync.isRunning() && !hasSameSpec(sync, target.asJSON(), options, sObjectName)) {
+            syncMgr.deleteSync(syncName);
+            sync = null;
+        }
+
+        if (sync == null) {
+            Log.d(sObjectName + "::QUERY SOQL:", soqlQuery);
+            sync = syncMgr.createSyncDown(target, options, sObjectName, syncName);
+        }
+
+        return sync;
+    }
+
+    /**
+     * @return true when the saved sync has this target, options and soup. Callers keep a running sync
+     * as is, re-running it fails until it is done.
+     */
+    private static boolean hasSameSpec(SyncState sync, JSONObject target, SyncOptions options, String soupName) throws JSONException {
+        return soupName.equals(sync.getSoupName())
+                && sync.getTarget() != null && target.toString().equals(sync.getTarget().asJSON().toString())
+                && sync.getOptions() != null && options.asJSON().toString().equals(sync.getOptions().asJSON().toString());
+    }
+
+    /**
+     * Incremental queries are ordered by LastModifiedDate, so that MobileSync saves maxTimeStamp along with
+     * each batch. A query cut by the limit resumes at the LastModifiedDate of the last record it saved, see
+     * {@link IncrementalSoqlSyncDownTarget}.
+     */
+    private String buildSyncDownQuery(String sObjectName) {
+        List<String> fieldsSyncDown = modelBuildingHelper.getFieldsToSyncDown();
+        SOQLBuilder builder = SOQLBuilder.getInstanceWithFields(fieldsSyncDown)
+                .from(sObjectName)
+                .where(where);
+
+        if (incremental) {
+            builder.orderBy(Constants.LAST_MODIFIED_DATE);
+        }
+
+        return builder.limit(resources.getInteger(R.integer.soql_query_limit)).build();
+    }
+
+    /**
+     * Replaces, on every local record, the _soupEntryId of its local parents by their Salesforce Id once
+     * they have one. Parents are resolved with one query per parent class and the records are saved in
+     * a single transaction.
+     */
     public void updateChainedObject() throws JSONException {
         JSONArray models = SmartSelect.from(smartStore, type).where(Condition.prop(SmartObjectConstants.LOCAL).eq(true)).rawList();
-        Map<String, Class<? extends SmartObject>> sourceClassBySourceFieldName = new HashMap<>();
-        Map<String, String> destinationBySource = getDestinationBySource(sourceClassBySourceFieldName);
+        ModelMetadata metadata = ModelMetadata.of(type);
+        Map<String, Class<? extends SmartObject>> sourceClassBySourceFieldName = metadata.getSourceClassBySource();
+        Map<String, String> destinationBySource = metadata.getDestinationBySource();
+
+        if (models == null || models.length() == 0 || destinationBySource.isEmpty()) {
+            return;
+        }
+
+        Map<Class<? extends SmartObject>, Set<Long>> entryIdsByClass = new HashMap<>();
 
         for (int i = 0; i < models.length(); i++) {
-            boolean hasToUpdate = false;
-            JSONObject model = (JSONObject) ((JSONArray) models.get(i)).get(0);
+            JSONObject model = models.getJSONArray(i).getJSONObject(0);
 
             for (String fieldName : destinationBySource.keySet()) {
-                try {
-                    model.get(fieldName);
-                } catch (Exception e) {
+                if (model.isNull(fieldName)) {
                     continue;
                 }
 
-                if (model.get(fieldName) != null) {
-                    Repository repository = new Repository(smartStore, sourceClassBySourceFieldName.get(fieldName)) {
-                    };
-                    SmartObject tmpModel = repository.findByEntryId(model.getLong(fieldName));
-                    if (tmpModel == null) continue;
-                    String retrievedId = tmpModel.getId();
-                    if (retrievedId.length() > 18) continue;
-                    model.put(destinationBySource.get(fieldName), retrievedId);
-                    model.put(fieldName, null);
-                    hasToUpdate = true;
+                Class<? extends SmartObject> sourceClass = sourceClassBySourceFieldName.get(fieldName);
+                Set<Long> entryIds = entryIdsByClass.get(sourceClass);
+                if (entryIds == null) {
+                    entryIds = new HashSet<>();
+                    entryIdsByClass.put(sourceClass, entryIds);
                 }
+                entryIds.add(model.getLong(fieldName));
             }
+        }
 
-            if (hasToUpdate) {
-                smartStore.update(getSoup(type), model, model.getLong(SmartObjectConstants.SOUP_ENTRY_ID));
-            }
+        Map<Class<? extends SmartObject>, Map<Long, String>> idsByClass = new HashMap<>();
+        for (Map.Entry<Class<? extends SmartObject>, Set<Long>> entry : entryIdsByClass.entrySet()) {
+            idsByClass.put(entry.getKey(), findIds(entry.getKey(), entry.getValue()));
         }
-    }
 
-    private Map<String, String> getDestinationBySource(Map<String, Class<? extends SmartObject>> sourceClassBySourceFieldName) {
-        List<Field> sourceFields = new ArrayList<>();
-        List<Field> destinationFields = new ArrayList<>();
-        List<Field> fields = Arrays.asList(type.getDeclaredFields());
-        Map<String, String> destinationBySource = new HashMap<>();
+        List<JSONObject> toUpdate = new ArrayList<>();
+        List<Set<String>> changedPaths = new ArrayList<>();
+
+        for (int i = 0; i < models.length(); i++) {
+            JSONObject model = models.getJSONArray(i).getJSONObject(0);
+            Set<String> changed = new HashSet<>();
+
+            for (String fieldName : destinationBySource.keySet()) {
+                if (model.isNull(fieldName)) {
+                    continue;
+                }
+
+                String retrievedId = idsByClass.get(sourceClassBySourceFieldName.get(fieldName)).get(model.getLong(fieldName));
+                if (retrievedId == null || retrievedId.length() > 18) continue;
 
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(SourceLocalParent.class)) {
-                sourceFields.add(field);
+                String destination = destinationBySource.get(fieldName);
+                model.put(destination, retrievedId);
+                model.put(fieldName, null);
+                changed.add(destination);
+                changed.add(fieldName);
             }
 
-            if (field.isAnnotationPresent(DestinationLocalParent.class)) {
-                destinationFields.add(field);
+            if (!changed.isEmpty()) {
+                recordChangedFields(model, changed);
+                toUpdate.add(model);
+                changedPaths.add(changed);
             }
         }
 
-        for (Field source : sourceFields) {
-            Class<? extends SmartObject> sourceClass = null;
-            for (Annotation annotation : source.getAnnotations()) {
-                if (annotation instanceof SourceLocalParent) {
-                    sourceClass = ((SourceLocalParent) annotation).value();
-                    break;
+        if (toUpdate.isEmpty()) {
+            return;
+        }
+
+        String soup = getSoup(type);
+        synchronized (smartStore.getDatabase()) {
+            smartStore.beginTransaction();
+            try {
+                for (int i = 0; i < toUpdate.size(); i++) {
+                    JSONObject model = toUpdate.get(i);
+                    smartStore.update(soup, model, model.getLong(SmartObjectConstants.SOUP_ENTRY_ID), changedPaths.get(i), false);
                 }
+                smartStore.setTransactionSuccessful();
+            } finally {
+                smartStore.endTransaction();
             }
+        }
+    }
 
-            for (Field destination : destinationFields) {
-                Class<? extends SmartObject> destinationClass = null;
-                String fieldName = "";
-                for (Annotation annotation : destination.getAnnotations()) {
-                    if (annotation instanceof DestinationLocalParent) {
-                        destinationClass = ((DestinationLocalParent) annotation).value();
-                    }
-
-                    if (annotation instanceof JsonProperty) {
-                        fieldName = ((JsonProperty) annotation).value();
-                    }
-                }
+    /**
+     * @return Id by _soupEntryId of the given records of a parent class
+     */
+    private Map<Long, String> findIds(Class<? extends SmartObject> parentClass, Set<Long> entryIds) throws JSONException {
+        Map<Long, String> ids = new HashMap<>();
+        JSONArray rows = SmartSelect.from(smartStore, parentClass)
+                .select(SmartObjectConstants.SOUP_ENTRY_ID, SmartObjectConstants.ID)
+                .where(Condition.prop(SmartObjectConstants.SOUP_ENTRY_ID).in(entryIds))
+                .rawList();
+
+        if (rows == null) {
+            return ids;
+        }
 
-                if (sourceClass != null && destinationClass != null && !fieldName.equals("") && sourceClass == destinationClass) {
-                    destinationBySource.put(source.getName(), fieldName);
-                    sourceClassBySourceFieldName.put(source.getName(), sourceClass);
-                    break;
-                }
+        for (int i = 0; i < rows.length(); i++) {
+            JSONArray row = rows.getJSONArray(i);
+            if (!row.isNull(1)) {
+                ids.put(row.getLong(0), row.getString(1));
             }
         }
 
-        return destinationBySource;
+        return ids;
     }
 
-    private String getSoup(Class<? extends SmartObject> modelClass) {
-        if (!modelClass.isAnnotationPresent(SObject.class)) {
-            Log.e(SmartObject.class.getSimpleName() + "::GET_SOUP", "SObject annotation missing in model class: " + modelClass.getSimpleName());
-            return "";
+    /**
+     * Adds the resolved lookups to the fields sent on sync up, when only some fields are being sent.
+     */
+    private void recordChangedFields(JSONObject model, Set<String> changed) throws JSONException {
+        JSONArray changedFields = model.optJSONArray(SmartObjectConstants.CHANGED_FIELDS);
+        if (changedFields == null) {
+            return;
         }
 
-        for (Annotation annotation : modelClass.getAnnotations()) {
-            if (annotation instanceof SObject) {
-                return ((SObject) annotation).value();
+        Set<String> recorded = new HashSet<>();
+        for (int i = 0; i < changedFields.length(); i++) {
+            recorded.add(changedFields.getString(i));
+        }
+
+        for (String field : changed) {
+            if (recorded.add(field)) {
+                changedFields.put(field);
             }
         }
+        changed.add(SmartObjectConstants.CHANGED_FIELDS);
+    }
+
+    private String getSoup(Class<? extends SmartObject> modelClass) {
+        ModelMetadata metadata = ModelMetadata.of(modelClass);
+
+        if (!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName() + "::GET_SOUP", "SObject annotation missing in model class: " + modelClass.getSimpleName());
+            return "";
+        }
 
-        return "";
+        return metadata.getSoupName();
     }
 }
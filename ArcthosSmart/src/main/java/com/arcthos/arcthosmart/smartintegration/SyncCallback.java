@@ -10,7 +10,15 @@ import org.json.JSONObject;
 
 public interface SyncCallback {
     void onUpSuccess(SyncState sync, SyncState.Status status, String sObjectName);
+    /**
+     * @param sync       null when the sync couldn't start, e.g. while the previous run is still running
+     * @param jsonObject a record the server rejected, with its error in __last_error__, when the sync is done.
+     *                   When the sync itself failed, the record synced up by id or null.
+     */
     void onUpFailure(SyncState sync, JSONObject jsonObject);
     void onDownSuccess(SyncState sync, int size, String sObjectName);
+    /**
+     * @param sync null when the sync couldn't start, e.g. while the previous run is still running
+     */
     void onDownFailure(SyncState sync);
 }
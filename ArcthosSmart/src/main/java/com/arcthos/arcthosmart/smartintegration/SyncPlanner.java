@@ -0,0 +1,406 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import android.os.AsyncTask;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.arcthos.arcthosmart.annotations.DestinationLocalParent;
+import com.arcthos.arcthosmart.annotations.LookUp;
+import com.arcthos.arcthosmart.annotations.SourceLocalParent;
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.salesforce.androidsdk.mobilesync.util.SyncState;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the chained sync of several models in dependency order.
+ *
+ * A model depends on the models of the plan it references through {@link LookUp},
+ * {@link SourceLocalParent} and {@link DestinationLocalParent}: it only starts once they are synced, so
+ * its local parents have their server Id. Models that don't depend on each other sync in parallel, and
+ * models depending on a failed one are skipped. Each model gets a {@link Step} with its timings.
+ */
+public class SyncPlanner {
+    private final Map<Class<? extends SmartObject>, Step> steps = new LinkedHashMap<>();
+    private final StepRunner stepRunner;
+    private final SyncCallback syncCallback;
+    private final Executor executor;
+
+    private ChainedCallback chainedCallback;
+    private long startedAt = -1;
+    private int remaining;
+
+    public SyncPlanner(List<Class<? extends SmartObject>> models, SyncherFactory syncherFactory, SyncCallback syncCallback) {
+        this(models, syncherFactory, syncCallback, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * @param executor starts the syncs, which only prepare their local records before going async
+     */
+    public SyncPlanner(List<Class<? extends SmartObject>> models, SyncherFactory syncherFactory, SyncCallback syncCallback, Executor executor) {
+        this(models, new SyncherRunner(syncherFactory), syncCallback, executor);
+    }
+
+    SyncPlanner(List<Class<? extends SmartObject>> models, StepRunner stepRunner, SyncCallback syncCallback, Executor executor) {
+        this.stepRunner = stepRunner;
+        this.syncCallback = syncCallback;
+        this.executor = executor;
+
+        Map<Class<? extends SmartObject>, Step> unordered = new LinkedHashMap<>();
+        for (Class<? extends SmartObject> model : models) {
+            unordered.put(model, new Step(model));
+        }
+
+        for (Step step : unordered.values()) {
+            for (Class<? extends SmartObject> parent : getParents(step.model)) {
+                Step parentStep = unordered.get(parent);
+                if (parentStep != null && parentStep != step) {
+                    step.parents.add(parentStep);
+                    parentStep.children.add(step);
+                }
+            }
+        }
+
+        sort(unordered);
+    }
+
+    /**
+     * Starts every model without parents in the plan, the others start as soon as their parents are done.
+     *
+     * @param chainedCallback called once every model is done, failed or skipped, may be null
+     */
+    public synchronized void run(ChainedCallback chainedCallback) {
+        if (startedAt != -1) {
+            throw new IllegalStateException("Sync plan already ran, plan again to sync again.");
+        }
+
+        this.chainedCallback = chainedCallback;
+        this.startedAt = SystemClock.elapsedRealtime();
+        this.remaining = steps.size();
+
+        if (remaining == 0) {
+            finishPlan();
+            return;
+        }
+
+        for (Step step : steps.values()) {
+            step.pendingParents = step.parents.size();
+        }
+
+        for (Step step : steps.values()) {
+            if (step.parents.isEmpty()) {
+                step.readyAt = 0;
+                start(step);
+            }
+        }
+    }
+
+    /**
+     * @return the step of every model, parents before their children
+     */
+    public synchronized List<Step> getSteps() {
+        return new ArrayList<>(steps.values());
+    }
+
+    /**
+     * @return the chain of steps, each waiting for the previous one, that ended last
+     */
+    public synchronized List<Step> getCriticalPath() {
+        Step last = null;
+        for (Step step : steps.values()) {
+            if (step.finishedAt != -1 && (last == null || step.finishedAt > last.finishedAt)) {
+                last = step;
+            }
+        }
+
+        List<Step> path = new ArrayList<>();
+        for (Step step = last; step != null; step = step.waitedFor) {
+            path.add(step);
+        }
+
+        Collections.reverse(path);
+        return path;
+    }
+
+    private void start(final Step step) {
+        step.status = Step.Status.RUNNING;
+        step.startedAt = elapsed();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ChainedCallback finish = new ChainedCallback() {
+                    @Override
+                    public void onFinish() {
+                        finish(step);
+                    }
+                };
+
+                try {
+                    stepRunner.run(step.model, new StepCallback(step), finish);
+                } catch (RuntimeException e) {
+                    Log.e(SyncPlanner.class.getSimpleName(), "Failed to sync " + step.model.getSimpleName(), e);
+                    step.failed = true;
+                    finish(step);
+                }
+            }
+        });
+    }
+
+    private synchronized void finish(Step step) {
+        if (step.finishedAt != -1) {
+            return;
+        }
+
+        step.finishedAt = elapsed();
+        step.status = step.failed ? Step.Status.FAILED : Step.Status.DONE;
+        remaining--;
+
+        for (Step child : step.children) {
+            if (child.status != Step.Status.PENDING) {
+                continue;
+            }
+
+            if (step.failed) {
+                skip(child);
+            } else if (--child.pendingParents == 0) {
+                child.readyAt = step.finishedAt;
+                child.waitedFor = step;
+                start(child);
+            }
+        }
+
+        if (remaining == 0) {
+            finishPlan();
+        }
+    }
+
+    private void skip(Step step) {
+        step.status = Step.Status.SKIPPED;
+        step.finishedAt = elapsed();
+        remaining--;
+
+        for (Step child : step.children) {
+            if (child.status == Step.Status.PENDING) {
+                skip(child);
+            }
+        }
+    }
+
+    private void finishPlan() {
+        for (Step step : getCriticalPath()) {
+            Log.d(SyncPlanner.class.getSimpleName(), "Critical path: " + step);
+        }
+
+        if (chainedCallback != null) {
+            chainedCallback.onFinish();
+        }
+    }
+
+    private long elapsed() {
+        return SystemClock.elapsedRealtime() - startedAt;
+    }
+
+    /**
+     * Orders the steps parents first, failing on cycles.
+     */
+    private void sort(Map<Class<? extends SmartObject>, Step> unordered) {
+        Map<Step, Integer> pendingParents = new LinkedHashMap<>();
+        List<Step> ready = new ArrayList<>();
+
+        for (Step step : unordered.values()) {
+            pendingParents.put(step, step.parents.size());
+            if (step.parents.isEmpty()) {
+                ready.add(step);
+            }
+        }
+
+        while (!ready.isEmpty()) {
+            Step step = ready.remove(0);
+            steps.put(step.model, step);
+
+            for (Step child : step.children) {
+                int pending = pendingParents.get(child) - 1;
+                pendingParents.put(child, pending);
+                if (pending == 0) {
+                    ready.add(child);
+                }
+            }
+        }
+
+        if (steps.size() != unordered.size()) {
+            List<String> cyclic = new ArrayList<>();
+            for (Step step : unordered.values()) {
+                if (!steps.containsKey(step.model)) {
+                    cyclic.add(step.model.getSimpleName());
+                }
+            }
+
+            throw new IllegalArgumentException("Cyclic sync dependency between " + cyclic);
+        }
+    }
+
+    private static Set<Class<? extends SmartObject>> getParents(Class<? extends SmartObject> model) {
+        ModelMetadata metadata = ModelMetadata.of(model);
+        Set<Class<? extends SmartObject>> parents = new LinkedHashSet<>();
+
+        // DestinationLocalParent fields are only kept when they match a SourceLocalParent of the same class
+        parents.addAll(metadata.getSourceClassBySource().values());
+        parents.addAll(metadata.getLookUps().values());
+        return parents;
+    }
+
+    public interface SyncherFactory {
+        /**
+         * @param syncCallback to pass to the SObjectSyncher, so the planner knows when a sync fails
+         */
+        SObjectSyncher<?> create(Class<? extends SmartObject> model, SyncCallback syncCallback);
+    }
+
+    /**
+     * Syncs one model, reporting failures to syncCallback and calling finish once done whatever the outcome.
+     */
+    interface StepRunner {
+        void run(Class<? extends SmartObject> model, SyncCallback syncCallback, ChainedCallback finish);
+    }
+
+    private static class SyncherRunner implements StepRunner {
+        private final SyncherFactory syncherFactory;
+
+        SyncherRunner(SyncherFactory syncherFactory) {
+            this.syncherFactory = syncherFactory;
+        }
+
+        @Override
+        public void run(Class<? extends SmartObject> model, SyncCallback syncCallback, ChainedCallback finish) {
+            SObjectSyncher<?> sObjectSyncher = syncherFactory.create(model, syncCallback);
+
+            if (sObjectSyncher.hasSoup()) {
+                sObjectSyncher.chainedSyncUpAndDown(finish);
+            } else {
+                sObjectSyncher.syncDown(finish);
+            }
+        }
+    }
+
+    /**
+     * Sync of one model in a plan. Times are in milliseconds since the plan started, -1 until reached.
+     */
+    public static class Step {
+        public enum Status {
+            PENDING,
+            RUNNING,
+            DONE,
+            FAILED,
+            SKIPPED
+        }
+
+        private final Class<? extends SmartObject> model;
+        private final List<Step> parents = new ArrayList<>();
+        private final List<Step> children = new ArrayList<>();
+        private volatile Status status = Status.PENDING;
+        private volatile boolean failed;
+        private int pendingParents;
+        private Step waitedFor;
+        private long readyAt = -1;
+        private long startedAt = -1;
+        private long finishedAt = -1;
+
+        Step(Class<? extends SmartObject> model) {
+            this.model = model;
+        }
+
+        public Class<? extends SmartObject> getModel() {
+            return model;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the models this one waited for
+         */
+        public List<Class<? extends SmartObject>> getParents() {
+            List<Class<? extends SmartObject>> parentModels = new ArrayList<>();
+            for (Step parent : parents) {
+                parentModels.add(parent.model);
+            }
+            return parentModels;
+        }
+
+        /**
+         * @return the parent that finished last, so the one that held this model back, null for a root
+         */
+        public Class<? extends SmartObject> getWaitedFor() {
+            return waitedFor == null ? null : waitedFor.model;
+        }
+
+        public long getReadyAt() {
+            return readyAt;
+        }
+
+        public long getStartedAt() {
+            return startedAt;
+        }
+
+        public long getFinishedAt() {
+            return finishedAt;
+        }
+
+        public long getDuration() {
+            return startedAt == -1 || finishedAt == -1 ? -1 : finishedAt - startedAt;
+        }
+
+        @Override
+        public String toString() {
+            return model.getSimpleName() + " " + status + " started at " + startedAt + "ms, took " + getDuration() + "ms";
+        }
+    }
+
+    /**
+     * Records failures of a step before forwarding them to the caller's callback.
+     */
+    private class StepCallback implements SyncCallback {
+        private final Step step;
+
+        StepCallback(Step step) {
+            this.step = step;
+        }
+
+        @Override
+        public void onUpSuccess(SyncState sync, SyncState.Status status, String sObjectName) {
+            if (syncCallback != null) syncCallback.onUpSuccess(sync, status, sObjectName);
+        }
+
+        @Override
+        public void onUpFailure(SyncState sync, JSONObject jsonObject) {
+            // Records rejected by the server are reported once the sync up is done, they don't fail the step
+            if (sync == null || !SyncState.Status.DONE.equals(sync.getStatus())) {
+                step.failed = true;
+            }
+            if (syncCallback != null) syncCallback.onUpFailure(sync, jsonObject);
+        }
+
+        @Override
+        public void onDownSuccess(SyncState sync, int size, String sObjectName) {
+            if (syncCallback != null) syncCallback.onDownSuccess(sync, size, sObjectName);
+        }
+
+        @Override
+        public void onDownFailure(SyncState sync) {
+            step.failed = true;
+            if (syncCallback != null) syncCallback.onDownFailure(sync);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import android.util.Log;
+
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.salesforce.androidsdk.mobilesync.util.SyncState;
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Deletes the sync states SObjectSyncher no longer runs from the syncs soup.
+ *
+ * These are the unnamed syncs on the soup of a model, which earlier versions created on every run, and
+ * the syncs named by SObjectSyncher whose soup was dropped or whose model is gone. Running syncs are kept.
+ */
+public class SyncStatePruner {
+    private static final String ALL_SYNCS = "select {" + SyncState.SYNCS_SOUP + ":_soup} from {" + SyncState.SYNCS_SOUP + "}";
+
+    private SyncStatePruner() {
+    }
+
+    /**
+     * @param models every model of the application, when null only the named syncs whose soup was dropped
+     *               are deleted
+     * @return the number of deleted sync states
+     */
+    public static int prune(SmartStore smartStore, List<Class<? extends SmartObject>> models) {
+        Set<String> soups = null;
+        if (models != null) {
+            soups = new HashSet<>();
+            for (Class<? extends SmartObject> model : models) {
+                ModelMetadata metadata = ModelMetadata.of(model);
+                if (metadata.isSObject()) {
+                    soups.add(metadata.getSoupName());
+                }
+            }
+        }
+
+        List<Long> orphans = new ArrayList<>();
+
+        try {
+            JSONArray rows = smartStore.query(QuerySpec.buildSmartQuerySpec(ALL_SYNCS, Integer.MAX_VALUE), 0);
+
+            for (int i = 0; i < rows.length(); i++) {
+                JSONObject sync = rows.getJSONArray(i).getJSONObject(0);
+                if (isOrphan(smartStore, sync, soups)) {
+                    orphans.add(sync.getLong(SmartStore.SOUP_ENTRY_ID));
+                }
+            }
+        } catch (JSONException e) {
+            Log.e(SyncStatePruner.class.getSimpleName(), "Could not read sync states", e);
+            return 0;
+        }
+
+        if (!orphans.isEmpty()) {
+            smartStore.delete(SyncState.SYNCS_SOUP, orphans.toArray(new Long[orphans.size()]), true);
+        }
+
+        return orphans.size();
+    }
+
+    private static boolean isOrphan(SmartStore smartStore, JSONObject sync, Set<String> soups) {
+        if (SyncState.Status.RUNNING.name().equals(sync.optString(SyncState.SYNC_STATUS))) {
+            return false;
+        }
+
+        String name = sync.isNull(SyncState.SYNC_NAME) ? null : sync.optString(SyncState.SYNC_NAME);
+        String soupName = sync.optString(SyncState.SYNC_SOUP_NAME);
+
+        if (name == null) {
+            return soups != null && soups.contains(soupName);
+        }
+
+        if (!name.startsWith(SObjectSyncher.SYNC_NAME_PREFIX)) {
+            return false;
+        }
+
+        if (!smartStore.hasSoup(soupName)) {
+            return true;
+        }
+
+        return soups != null && !soups.contains(soupName);
+    }
+}
@@ -2,37 +2,42 @@ package com.arcthos.arcthosmart.smartintegration.helpers;
 
 import android.util.Log;
 
-import com.arcthos.arcthosmart.annotations.Ignore;
-import com.arcthos.arcthosmart.annotations.IgnoreOnUpdate;
-import com.arcthos.arcthosmart.annotations.LookUp;
-import com.arcthos.arcthosmart.annotations.SObject;
-import com.arcthos.arcthosmart.annotations.SoqlWhere;
-import com.arcthos.arcthosmart.annotations.Sync;
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
 import com.arcthos.arcthosmart.smartorm.SObjectAnnotationNotFoundException;
 import com.arcthos.arcthosmart.smartorm.SmartObject;
-import com.fasterxml.jackson.annotation.JsonProperty;
 import com.salesforce.androidsdk.smartstore.store.IndexSpec;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.json.JSONException;
+
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by Vinicius Damiati on 14-Oct-17.
  */
 
 public class ModelBuildingHelper<T extends SmartObject> {
+    // Index path types each soup was last registered or checked with, by database
+    private static final Map<SQLiteDatabase, Map<String, Set<String>>> REGISTERED_INDEXES = new WeakHashMap<>();
+
     private Class<T> modelClass;
+    private ModelMetadata metadata;
 
     public ModelBuildingHelper(Class<T> modelClass) {
         this.modelClass = modelClass;
+        this.metadata = ModelMetadata.of(modelClass);
     }
 
     public String getSObjectName() {
-        if (!modelClass.isAnnotationPresent(SObject.class)) {
+        if (!metadata.isSObject()) {
             try {
                 throw new SObjectAnnotationNotFoundException("SObject annotation missing in model class: " + modelClass.getSimpleName());
             } catch (SObjectAnnotationNotFoundException e) {
@@ -41,157 +46,75 @@ public class ModelBuildingHelper<T extends SmartObject> {
             }
         }
 
-        for (Annotation annotation : modelClass.getAnnotations()) {
-            if (annotation instanceof SObject) {
-                return ((SObject) annotation).value();
-            }
-        }
-
-        return null;
+        return metadata.getSoupName();
     }
 
     public IndexSpec[] getIndexSpecs() {
         List<IndexSpec> indexSpecs = new ArrayList<>();
-        List<Field> fields = Arrays.asList(modelClass.getDeclaredFields());
-        List<Field> superClassFields = Arrays.asList(modelClass.getSuperclass().getDeclaredFields());
 
-        getIndexSpecsByCollection(indexSpecs, superClassFields);
-        getIndexSpecsByCollection(indexSpecs, fields);
+        for (Map.Entry<String, SmartStore.Type> indexType : metadata.getIndexTypes().entrySet()) {
+            indexSpecs.add(new IndexSpec(indexType.getKey(), indexType.getValue()));
+        }
 
-        IndexSpec[] indexSpecsArray = new IndexSpec[indexSpecs.size()];
-        return indexSpecs.toArray(indexSpecsArray);
+        return indexSpecs.toArray(new IndexSpec[indexSpecs.size()]);
     }
 
-    private void getIndexSpecsByCollection(List<IndexSpec> indexSpecs, List<Field> fields) {
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(Ignore.class)) {
-                continue;
-            }
+    /**
+     * Registers the soup, or alters it when its indexes differ from the model ones,
+     * e.g. to drop the untyped indexes of soups registered before {@link com.arcthos.arcthosmart.annotations.Index}.
+     * The indexes of the soup are only read back the first time for each database.
+     */
+    public void registerSoup(SmartStore smartStore) {
+        String soupName = getSObjectName();
+        IndexSpec[] indexSpecs = getIndexSpecs();
+        Set<String> pathTypes = getPathTypes(indexSpecs);
+
+        if (smartStore.hasSoup(soupName) && pathTypes.equals(getRegisteredIndexes(smartStore).get(soupName))) {
+            return;
+        }
 
-            if (field.isAnnotationPresent(SoqlWhere.class)) {
-                continue;
+        if (!smartStore.hasSoup(soupName)) {
+            smartStore.registerSoup(soupName, indexSpecs);
+        } else if (!pathTypes.equals(getPathTypes(smartStore.getSoupIndexSpecs(soupName)))) {
+            try {
+                smartStore.alterSoup(soupName, indexSpecs, true);
+            } catch (JSONException e) {
+                Log.e(ModelBuildingHelper.class.getSimpleName(), "Could not alter soup " + soupName, e);
+                return;
             }
+        }
+
+        getRegisteredIndexes(smartStore).put(soupName, pathTypes);
+    }
 
-            String fieldName = "";
-
-            if (field.isAnnotationPresent(JsonProperty.class)) {
-                for (Annotation annotation : field.getAnnotations()) {
-                    if (annotation instanceof JsonProperty) {
-                        fieldName = ((JsonProperty) annotation).value();
-                        break;
-                    }
-                }
-            } else {
-                fieldName = field.getName();
+    private static Map<String, Set<String>> getRegisteredIndexes(SmartStore smartStore) {
+        synchronized (REGISTERED_INDEXES) {
+            Map<String, Set<String>> registered = REGISTERED_INDEXES.get(smartStore.getDatabase());
+            if (registered == null) {
+                registered = new ConcurrentHashMap<>();
+                REGISTERED_INDEXES.put(smartStore.getDatabase(), registered);
             }
+            return registered;
+        }
+    }
 
-            IndexSpec indexSpec = new IndexSpec(fieldName, SmartStore.Type.string);
-            indexSpecs.add(indexSpec);
+    private static Set<String> getPathTypes(IndexSpec[] indexSpecs) {
+        Set<String> pathTypes = new HashSet<>();
+        for (IndexSpec indexSpec : indexSpecs) {
+            pathTypes.add(indexSpec.getPathType());
         }
+        return pathTypes;
     }
 
     public List<String> getFieldsToSyncUp() {
-        return getFieldsToSync(false, false);
+        return new ArrayList<>(metadata.getFieldsToSyncUp());
     }
 
     public List<String> getFieldsToSyncUpForUpdate() {
-        return getFieldsToSync(false, true);
+        return new ArrayList<>(metadata.getFieldsToSyncUpForUpdate());
     }
 
     public List<String> getFieldsToSyncDown() {
-        return getFieldsToSync(true, false);
-    }
-
-    private List<String> getFieldsToSync(boolean syncDown, boolean forUpdate) {
-        List<String> fieldsToSync = new ArrayList<>();
-
-        List<Field> fields = Arrays.asList(modelClass.getDeclaredFields());
-        List<Field> superClassFields = Arrays.asList(modelClass.getSuperclass().getDeclaredFields());
-
-        getFieldsToSyncByCollection(fieldsToSync, superClassFields, syncDown, forUpdate);
-        getFieldsToSyncByCollection(fieldsToSync, fields, syncDown, forUpdate);
-
-        return fieldsToSync;
-    }
-
-    private void getFieldsToSyncByCollection(List<String> fieldsToSync, List<Field> fields, boolean syncDown, boolean forUpdate) {
-        for (Field field : fields) {
-            if (field.isAnnotationPresent(Ignore.class)) {
-                continue;
-            }
-
-            if (field.isAnnotationPresent(SoqlWhere.class)) {
-                continue;
-            }
-
-            if (field.isAnnotationPresent(LookUp.class) && !syncDown) {
-                continue;
-            }
-
-            if (field.isAnnotationPresent(IgnoreOnUpdate.class) && !syncDown && forUpdate) {
-                continue;
-            }
-
-            String fieldName = "";
-
-            if (field.isAnnotationPresent(JsonProperty.class)) {
-                for (Annotation annotation : field.getAnnotations()) {
-                    if (annotation instanceof JsonProperty) {
-                        fieldName = ((JsonProperty) annotation).value();
-                        break;
-                    }
-                }
-            } else {
-                fieldName = field.getName();
-            }
-
-            if (field.isAnnotationPresent(LookUp.class)) {
-                fieldsToSync.addAll(processLookUp(field, fieldName));
-                continue;
-            }
-
-            if (!field.isAnnotationPresent(Sync.class)) {
-                fieldsToSync.add(fieldName);
-                continue;
-            }
-
-            for (Annotation annotation : field.getAnnotations()) {
-                if (annotation instanceof Sync) {
-                    if (syncDown) {
-                        if (((Sync) annotation).down()) {
-                            fieldsToSync.add(fieldName);
-                        }
-                    } else {
-                        if (((Sync) annotation).up()) {
-                            fieldsToSync.add(fieldName);
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    private List<String> processLookUp(Field field, String fieldName) {
-        Class<? extends SmartObject> lookUpFor = null;
-
-        for (Annotation annotation : field.getAnnotations()) {
-            if (annotation instanceof LookUp) {
-                lookUpFor = ((LookUp) annotation).value();
-                break;
-            }
-        }
-
-        if (lookUpFor == null) return new ArrayList<>();
-
-        ModelBuildingHelper modelBuildingHelper = new ModelBuildingHelper(lookUpFor);
-        List<String> relatedFields = modelBuildingHelper.getFieldsToSyncDown();
-
-        List<String> concatenedRelatedFields = new ArrayList<>();
-
-        for (String relatedField : relatedFields) {
-            concatenedRelatedFields.add(fieldName.concat(".").concat(relatedField));
-        }
-
-        return concatenedRelatedFields;
+        return new ArrayList<>(metadata.getFieldsToSyncDown());
     }
 }
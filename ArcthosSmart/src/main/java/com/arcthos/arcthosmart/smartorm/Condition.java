@@ -1,5 +1,10 @@
 package com.arcthos.arcthosmart.smartorm;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
 /**
  * Created by Vinicius Damiati on 03-Oct-17.
  */
@@ -17,6 +22,13 @@ public class Condition {
         return new Condition(property);
     }
 
+    /**
+     * Condition on every field indexed with @Index(fullText = true), to use with {@link #match(Object)}.
+     */
+    public static Condition fullText() {
+        return new Condition(null);
+    }
+
     public Condition eq(Object value) {
         if (value == null) {
             return isNull();
@@ -74,6 +86,25 @@ public class Condition {
         return this;
     }
 
+    /**
+     * Full text search on a field indexed with @Index(fullText = true), through the FTS table of the soup:
+     * matches rows containing every word of the term, in any order. Punctuation is ignored.
+     */
+    public Condition match(Object term) {
+        setValue(term);
+        check = Check.MATCH;
+        return this;
+    }
+
+    /**
+     * Same as {@link #match(Object)}, with words matched as prefixes, e.g. to search as you type.
+     */
+    public Condition matchPrefix(Object term) {
+        setValue(term);
+        check = Check.MATCH_PREFIX;
+        return this;
+    }
+
     public Condition notEq(Object value) {
         if (value == null) {
             return isNotNull();
@@ -107,6 +138,28 @@ public class Condition {
         return this;
     }
 
+    public Condition in(Collection<?> values) {
+        setValue(distinct(values));
+        check = Check.IN;
+        return this;
+    }
+
+    public Condition notIn(Collection<?> values) {
+        setValue(distinct(values));
+        check = Check.NOT_IN;
+        return this;
+    }
+
+    private static List<Object> distinct(Collection<?> values) {
+        if (values == null) {
+            return new ArrayList<>();
+        }
+
+        List<Object> distinct = new ArrayList<Object>(new LinkedHashSet<Object>(values));
+        distinct.remove(null);
+        return distinct;
+    }
+
     public Condition isNull() {
         setValue(null);
         check = Check.IS_NULL;
@@ -149,7 +202,11 @@ public class Condition {
         LIKE(" LIKE "),
         NOT_LIKE(" NOT LIKE "),
         IS_NULL(" IS NULL "),
-        IS_NOT_NULL(" IS NOT NULL ");
+        IS_NOT_NULL(" IS NOT NULL "),
+        IN(" IN "),
+        NOT_IN(" NOT IN "),
+        MATCH(" MATCH "),
+        MATCH_PREFIX(" MATCH ");
 
         private String symbol;
 
@@ -0,0 +1,302 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.arcthos.arcthosmart.smartorm.async.DatabaseCallback;
+import com.arcthos.arcthosmart.smartorm.async.DatabaseExecutor;
+import com.arcthos.arcthosmart.smartorm.async.DatabaseFuture;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Results of a {@link SmartSelect} kept up to date with its soup.
+ *
+ * Writes to the soup are debounced, then nothing is read while the soup version SmartStore bumps on
+ * every write is the one of the last delivered results. Otherwise the matching rows are read, on the
+ * {@link DatabaseExecutor} and under the database lock, and only delivered
+ * when their content or order differ. A steady stream of writes (e.g. a sync-down) still delivers
+ * results every {@link #DEFAULT_MAX_WAIT_MILLIS}. Observers are called on the main thread.
+ */
+public class LiveQuery<T> {
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 2000;
+
+    private final SmartSelect<T> select;
+    private final SmartStore smartStore;
+    private final String soupName;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final SmartStore.SoupChangeListener listener = new SmartStore.SoupChangeListener() {
+        @Override
+        public void onSoupChanged(String changedSoupName, Long[] soupEntryIds) {
+            if (soupName.equals(changedSoupName)) {
+                schedule();
+            }
+        }
+    };
+    private final Runnable trigger = new Runnable() {
+        @Override
+        public void run() {
+            refresh();
+        }
+    };
+
+    private long debounceMillis = DEFAULT_DEBOUNCE_MILLIS;
+    private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private Observer<T> observer;
+    private DatabaseFuture<Result<T>> running;
+    private boolean rerun;
+    private long firstChangeAt = -1;
+    private int generation;
+    private volatile Map<Long, Long> lastVersions;
+    private volatile long lastSoupVersion = -1;
+
+    LiveQuery(SmartSelect<T> select) {
+        this.select = select;
+        this.smartStore = select.getSmartStore();
+        this.soupName = select.getSoupName();
+    }
+
+    public LiveQuery<T> debounce(long debounceMillis, long maxWaitMillis) {
+        if (debounceMillis < 0 || maxWaitMillis < debounceMillis) {
+            throw new IllegalArgumentException("Max wait must be greater than or equal to the debounce, which can't be negative.");
+        }
+
+        this.debounceMillis = debounceMillis;
+        this.maxWaitMillis = maxWaitMillis;
+        return this;
+    }
+
+    /**
+     * Starts listening to the soup and delivers the current results right away.
+     */
+    public synchronized void observe(Observer<T> observer) {
+        if (this.observer != null) {
+            throw new IllegalStateException("LiveQuery is already observed, stop it first.");
+        }
+
+        this.observer = observer;
+        this.lastVersions = null;
+        this.lastSoupVersion = -1;
+        smartStore.registerSoupChangeListener(listener);
+        mainHandler.post(trigger);
+    }
+
+    public synchronized void stop() {
+        if (observer == null) {
+            return;
+        }
+
+        smartStore.unregisterSoupChangeListener(listener);
+        mainHandler.removeCallbacks(trigger);
+
+        if (running != null) {
+            running.cancel(false);
+        }
+
+        observer = null;
+        running = null;
+        rerun = false;
+        firstChangeAt = -1;
+        generation++;
+    }
+
+    public synchronized boolean isObserved() {
+        return observer != null;
+    }
+
+    /**
+     * Called by SmartStore while it holds the database lock: only posts the run.
+     */
+    private synchronized void schedule() {
+        if (observer == null) {
+            return;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        if (firstChangeAt == -1) {
+            firstChangeAt = now;
+        }
+
+        long delay = Math.min(debounceMillis, firstChangeAt + maxWaitMillis - now);
+        mainHandler.removeCallbacks(trigger);
+        mainHandler.postDelayed(trigger, Math.max(0, delay));
+    }
+
+    private synchronized void refresh() {
+        if (observer == null) {
+            return;
+        }
+
+        firstChangeAt = -1;
+
+        if (running != null) {
+            rerun = true;
+            return;
+        }
+
+        final int runGeneration = generation;
+        final Map<Long, Long> previousVersions = lastVersions;
+        final long previousSoupVersion = lastSoupVersion;
+
+        running = DatabaseExecutor.getInstance().read(null, new Callable<Result<T>>() {
+            @Override
+            public Result<T> call() throws Exception {
+                synchronized (smartStore.getDatabase()) {
+                    long soupVersion = smartStore.getSoupVersion(soupName);
+                    if (previousVersions != null && soupVersion == previousSoupVersion) {
+                        return null;
+                    }
+
+                    // SmartStore writes take the same lock, the rows match the soup version
+                    List<T> results = new ArrayList<>();
+                    Map<Long, Long> versions = select.snapshot(results);
+
+                    if (previousVersions != null && sameOrder(versions, previousVersions)) {
+                        return new Result<>(null, versions, soupVersion, null);
+                    }
+
+                    return new Result<>(results, versions, soupVersion, Diff.between(previousVersions, versions));
+                }
+            }
+        }, new DatabaseCallback<Result<T>>() {
+            @Override
+            public void onSuccess(Result<T> result) {
+                Observer<T> current = finish(runGeneration);
+                if (current == null || result == null) {
+                    return;
+                }
+
+                lastVersions = result.versions;
+                lastSoupVersion = result.soupVersion;
+
+                if (result.results != null) {
+                    current.onChanged(result.results, result.diff);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Observer<T> current = finish(runGeneration);
+                if (current != null) {
+                    current.onError(e);
+                }
+            }
+        });
+    }
+
+    private static boolean sameOrder(Map<Long, Long> versions, Map<Long, Long> previousVersions) {
+        return new ArrayList<Map.Entry<Long, Long>>(versions.entrySet())
+                .equals(new ArrayList<Map.Entry<Long, Long>>(previousVersions.entrySet()));
+    }
+
+    /**
+     * @return the observer to notify, or null when the run belongs to a stopped observation
+     */
+    private synchronized Observer<T> finish(int runGeneration) {
+        if (runGeneration != generation) {
+            return null;
+        }
+
+        running = null;
+
+        if (rerun) {
+            rerun = false;
+            mainHandler.post(trigger);
+        }
+
+        return observer;
+    }
+
+    public interface Observer<T> {
+        /**
+         * @param results every matching model, in query order
+         * @param diff what changed since the previous call, every result is added on the first one
+         */
+        void onChanged(List<T> results, Diff diff);
+
+        void onError(Exception e);
+    }
+
+    /**
+     * Rows of a live query that changed between two deliveries, by _soupEntryId.
+     */
+    public static class Diff {
+        private final List<Long> added;
+        private final List<Long> changed;
+        private final List<Long> removed;
+
+        Diff(List<Long> added, List<Long> changed, List<Long> removed) {
+            this.added = Collections.unmodifiableList(added);
+            this.changed = Collections.unmodifiableList(changed);
+            this.removed = Collections.unmodifiableList(removed);
+        }
+
+        static Diff between(Map<Long, Long> previous, Map<Long, Long> current) {
+            List<Long> added = new ArrayList<>();
+            List<Long> changed = new ArrayList<>();
+            List<Long> removed = new ArrayList<>();
+
+            for (Map.Entry<Long, Long> entry : current.entrySet()) {
+                Long previousVersion = previous == null ? null : previous.get(entry.getKey());
+                if (previousVersion == null) {
+                    added.add(entry.getKey());
+                } else if (!previousVersion.equals(entry.getValue())) {
+                    changed.add(entry.getKey());
+                }
+            }
+
+            if (previous != null) {
+                for (Long soupEntryId : previous.keySet()) {
+                    if (!current.containsKey(soupEntryId)) {
+                        removed.add(soupEntryId);
+                    }
+                }
+            }
+
+            return new Diff(added, changed, removed);
+        }
+
+        public List<Long> getAdded() {
+            return added;
+        }
+
+        public List<Long> getChanged() {
+            return changed;
+        }
+
+        public List<Long> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * True when only the order of the results changed.
+         */
+        public boolean isEmpty() {
+            return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+        }
+    }
+
+    /**
+     * Rows read by a refresh, results and diff are null when they are the ones already delivered.
+     */
+    private static class Result<T> {
+        final List<T> results;
+        final Map<Long, Long> versions;
+        final long soupVersion;
+        final Diff diff;
+
+        Result(List<T> results, Map<Long, Long> versions, long soupVersion, Diff diff) {
+            this.results = results;
+            this.versions = versions;
+            this.soupVersion = soupVersion;
+            this.diff = diff;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide cache of prebuilt Jackson readers and writers, one per model class.
+ *
+ * ObjectReader and ObjectWriter are immutable and thread-safe, so they are built once
+ * and shared by every Repository and SmartSelect instead of creating a new ObjectMapper per call.
+ */
+public final class ModelCodec<T> {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final ConcurrentMap<Class<?>, ModelCodec<?>> CODECS = new ConcurrentHashMap<>();
+
+    private final Class<T> modelClass;
+    private final ObjectReader reader;
+    private final ObjectReader listReader;
+    private final ObjectWriter writer;
+    private final boolean trackingChanges;
+
+    private ModelCodec(Class<T> modelClass) {
+        this.modelClass = modelClass;
+        this.trackingChanges = SmartObject.class.isAssignableFrom(modelClass) && ModelMetadata.of(modelClass).isTrackingChanges();
+        this.reader = MAPPER.readerFor(modelClass);
+        this.listReader = MAPPER.readerFor(MAPPER.getTypeFactory().constructCollectionType(List.class, modelClass));
+        this.writer = MAPPER.writerFor(modelClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> ModelCodec<T> of(Class<T> modelClass) {
+        ModelCodec<?> codec = CODECS.get(modelClass);
+
+        if (codec == null) {
+            codec = new ModelCodec<>(modelClass);
+            ModelCodec<?> previous = CODECS.putIfAbsent(modelClass, codec);
+            if (previous != null) {
+                codec = previous;
+            }
+        }
+
+        return (ModelCodec<T>) codec;
+    }
+
+    public static ObjectMapper getMapper() {
+        return MAPPER;
+    }
+
+    public Class<T> getModelClass() {
+        return modelClass;
+    }
+
+    public ObjectReader getReader() {
+        return reader;
+    }
+
+    public ObjectWriter getWriter() {
+        return writer;
+    }
+
+    public String write(T model) throws IOException {
+        return writer.writeValueAsString(model);
+    }
+
+    public JSONObject toJson(T model) throws IOException, JSONException {
+        return new JSONObject(write(model));
+    }
+
+    public T read(String json) throws IOException {
+        return loaded(reader.<T>readValue(json));
+    }
+
+    public T read(JSONObject json) throws IOException {
+        return read(json.toString());
+    }
+
+    public T read(JsonNode node) throws IOException {
+        return loaded(reader.<T>readValue(node));
+    }
+
+    /**
+     * Reads a row of a projection query: models are marked partial and never snapshotted.
+     */
+    public T readPartial(JsonNode node) throws IOException {
+        T model = reader.readValue(node);
+        if (model instanceof SmartObject) {
+            ((SmartObject) model).markPartial();
+        }
+
+        return model;
+    }
+
+    public List<T> readList(String jsonArray) throws IOException {
+        List<T> models = listReader.readValue(jsonArray);
+        for (T model : models) {
+            loaded(model);
+        }
+        return models;
+    }
+
+    /**
+     * Snapshots a model just read, when its class tracks changes, see {@link SmartObject#changedSinceLoad()}.
+     */
+    public T loaded(T model) {
+        if (trackingChanges && model != null) {
+            ((SmartObject) model).takeSnapshot();
+        }
+
+        return model;
+    }
+}
@@ -0,0 +1,38 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Annotation data of a model, generated at compile time by ArcthosSmartProcessor as
+ * {@code <Model>_ModelDescriptor} next to the model. {@link ModelMetadata} prefers it over reflection.
+ */
+public interface ModelDescriptor {
+    String SUFFIX = "_ModelDescriptor";
+
+    Class<? extends SmartObject> getModelClass();
+
+    String getSoupName();
+
+    boolean isTrackingChanges();
+
+    Map<String, String> getJsonNameByField();
+
+    Map<String, SmartStore.Type> getIndexTypes();
+
+    List<String> getFieldsToSyncUp();
+
+    List<String> getFieldsToSyncUpForUpdate();
+
+    List<String> getFieldsToSyncDown();
+
+    Map<String, Class<? extends SmartObject>> getLookUps();
+
+    String getSoqlWhereField();
+
+    Map<String, String> getDestinationBySource();
+
+    Map<String, Class<? extends SmartObject>> getSourceClassBySource();
+}
@@ -0,0 +1,13 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import java.util.List;
+
+/**
+ * Every {@link com.arcthos.arcthosmart.annotations.SObject} model of the application,
+ * generated at compile time by ArcthosSmartProcessor as {@link #GENERATED_CLASS}.
+ */
+public interface ModelIndex {
+    String GENERATED_CLASS = "com.arcthos.arcthosmart.generated.ArcthosModelIndex";
+
+    List<Class<? extends SmartObject>> getModels();
+}
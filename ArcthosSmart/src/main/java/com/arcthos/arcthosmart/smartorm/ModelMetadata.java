@@ -0,0 +1,384 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import android.util.Log;
+
+import com.arcthos.arcthosmart.annotations.DestinationLocalParent;
+import com.arcthos.arcthosmart.annotations.Ignore;
+import com.arcthos.arcthosmart.annotations.IgnoreOnUpdate;
+import com.arcthos.arcthosmart.annotations.Index;
+import com.arcthos.arcthosmart.annotations.IndexType;
+import com.arcthos.arcthosmart.annotations.LookUp;
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.arcthos.arcthosmart.annotations.SoqlWhere;
+import com.arcthos.arcthosmart.annotations.SourceLocalParent;
+import com.arcthos.arcthosmart.annotations.Sync;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Everything the framework reads from a model's annotations, computed once per class.
+ *
+ * Taken from the generated {@link ModelDescriptor} when there is one, otherwise by reflection,
+ * scanning the direct superclass fields first, then the model ones.
+ */
+public final class ModelMetadata {
+    private static final ConcurrentMap<Class<?>, ModelMetadata> METADATA = new ConcurrentHashMap<>();
+    // Indexed even without @Index since the framework and MobileSync query them
+    private static final Set<String> FRAMEWORK_INDEXES = new HashSet<>(Arrays.asList(
+            SmartObjectConstants.ID,
+            SmartObjectConstants.LAST_MODIFIED_DATE,
+            SmartObjectConstants.LOCAL,
+            SmartObjectConstants.LOCALLY_CREATE,
+            SmartObjectConstants.LOCALLY_UPDATED,
+            SmartObjectConstants.LOCALLY_DELETED,
+            GeneralConstants.IS_DELETED));
+    private static volatile ModelIndex modelIndex;
+    private static volatile boolean modelIndexLoaded;
+
+    private final Class<?> modelClass;
+    private final String soupName;
+    private final boolean trackingChanges;
+    private final Map<String, String> jsonNameByField;
+    private final Map<String, SmartStore.Type> indexTypes;
+    private final List<String> fieldsToSyncUp;
+    private final List<String> fieldsToSyncUpForUpdate;
+    private final Map<String, Class<? extends SmartObject>> lookUps;
+    private final String soqlWhereField;
+    private final Map<String, String> destinationBySource;
+    private final Map<String, Class<? extends SmartObject>> sourceClassBySource;
+    private volatile List<String> fieldsToSyncDown;
+
+    private ModelMetadata(ModelDescriptor descriptor) {
+        this.modelClass = descriptor.getModelClass();
+        this.soupName = descriptor.getSoupName();
+        this.trackingChanges = descriptor.isTrackingChanges();
+        this.jsonNameByField = descriptor.getJsonNameByField();
+        this.indexTypes = descriptor.getIndexTypes();
+        this.fieldsToSyncUp = descriptor.getFieldsToSyncUp();
+        this.fieldsToSyncUpForUpdate = descriptor.getFieldsToSyncUpForUpdate();
+        this.fieldsToSyncDown = descriptor.getFieldsToSyncDown();
+        this.lookUps = descriptor.getLookUps();
+        this.soqlWhereField = descriptor.getSoqlWhereField();
+        this.destinationBySource = descriptor.getDestinationBySource();
+        this.sourceClassBySource = descriptor.getSourceClassBySource();
+    }
+
+    private ModelMetadata(Class<?> modelClass) {
+        this.modelClass = modelClass;
+
+        SObject sObject = modelClass.getAnnotation(SObject.class);
+        this.soupName = sObject == null ? null : sObject.value();
+        this.trackingChanges = sObject != null && sObject.trackChanges();
+
+        Map<String, String> jsonNames = new LinkedHashMap<>();
+        Map<String, SmartStore.Type> indexed = new LinkedHashMap<>();
+        List<String> syncUp = new ArrayList<>();
+        List<String> syncUpForUpdate = new ArrayList<>();
+        Map<String, Class<? extends SmartObject>> lookUpClasses = new LinkedHashMap<>();
+
+        for (Field field : getScannedFields()) {
+            String jsonName = getJsonName(field);
+            jsonNames.put(field.getName(), jsonName);
+
+            if (field.isAnnotationPresent(Ignore.class) || field.isAnnotationPresent(SoqlWhere.class)) {
+                continue;
+            }
+
+            Index index = field.getAnnotation(Index.class);
+            if (index != null || FRAMEWORK_INDEXES.contains(jsonName)) {
+                indexed.put(jsonName, getIndexType(field, index));
+            }
+
+            LookUp lookUp = field.getAnnotation(LookUp.class);
+            if (lookUp != null) {
+                lookUpClasses.put(jsonName, lookUp.value());
+                continue;
+            }
+
+            Sync sync = field.getAnnotation(Sync.class);
+            if (sync == null || sync.up()) {
+                syncUp.add(jsonName);
+
+                if (!field.isAnnotationPresent(IgnoreOnUpdate.class)) {
+                    syncUpForUpdate.add(jsonName);
+                }
+            }
+        }
+
+        String soqlWhere = null;
+        Map<String, String> destinations = new HashMap<>();
+        Map<String, Class<? extends SmartObject>> sourceClasses = new HashMap<>();
+        List<Field> sourceFields = new ArrayList<>();
+        List<Field> destinationFields = new ArrayList<>();
+
+        for (Field field : modelClass.getDeclaredFields()) {
+            if (field.isAnnotationPresent(SoqlWhere.class)) {
+                soqlWhere = field.getName();
+            }
+
+            if (field.isAnnotationPresent(SourceLocalParent.class)) {
+                sourceFields.add(field);
+            }
+
+            if (field.isAnnotationPresent(DestinationLocalParent.class)) {
+                destinationFields.add(field);
+            }
+        }
+
+        for (Field source : sourceFields) {
+            Class<? extends SmartObject> sourceClass = source.getAnnotation(SourceLocalParent.class).value();
+
+            for (Field destination : destinationFields) {
+                Class<? extends SmartObject> destinationClass = destination.getAnnotation(DestinationLocalParent.class).value();
+                JsonProperty jsonProperty = destination.getAnnotation(JsonProperty.class);
+
+                if (jsonProperty != null && !jsonProperty.value().equals("") && sourceClass == destinationClass) {
+                    destinations.put(source.getName(), jsonProperty.value());
+                    sourceClasses.put(source.getName(), sourceClass);
+                    break;
+                }
+            }
+        }
+
+        this.jsonNameByField = Collections.unmodifiableMap(jsonNames);
+        this.indexTypes = Collections.unmodifiableMap(indexed);
+        this.fieldsToSyncUp = Collections.unmodifiableList(syncUp);
+        this.fieldsToSyncUpForUpdate = Collections.unmodifiableList(syncUpForUpdate);
+        this.lookUps = Collections.unmodifiableMap(lookUpClasses);
+        this.soqlWhereField = soqlWhere;
+        this.destinationBySource = Collections.unmodifiableMap(destinations);
+        this.sourceClassBySource = Collections.unmodifiableMap(sourceClasses);
+    }
+
+    public static ModelMetadata of(Class<?> modelClass) {
+        ModelMetadata metadata = METADATA.get(modelClass);
+
+        if (metadata == null) {
+            ModelDescriptor descriptor = loadDescriptor(modelClass);
+            metadata = descriptor != null ? new ModelMetadata(descriptor) : new ModelMetadata(modelClass);
+            ModelMetadata previous = METADATA.putIfAbsent(modelClass, metadata);
+            if (previous != null) {
+                metadata = previous;
+            }
+        }
+
+        return metadata;
+    }
+
+    /**
+     * @return the generated index of every SObject model, or null when the processor did not run
+     */
+    public static ModelIndex getModelIndex() {
+        if (!modelIndexLoaded) {
+            synchronized (ModelMetadata.class) {
+                if (!modelIndexLoaded) {
+                    modelIndex = load(ModelIndex.GENERATED_CLASS, ModelIndex.class, ModelMetadata.class.getClassLoader());
+                    modelIndexLoaded = true;
+                }
+            }
+        }
+
+        return modelIndex;
+    }
+
+    private static ModelDescriptor loadDescriptor(Class<?> modelClass) {
+        String packageName = modelClass.getPackage() == null ? "" : modelClass.getPackage().getName();
+        String simpleName = packageName.isEmpty() ? modelClass.getName() : modelClass.getName().substring(packageName.length() + 1);
+        String descriptorName = (packageName.isEmpty() ? "" : packageName + ".") + simpleName.replace('$', '_') + ModelDescriptor.SUFFIX;
+
+        return load(descriptorName, ModelDescriptor.class, modelClass.getClassLoader());
+    }
+
+    private static <G> G load(String className, Class<G> generatedType, ClassLoader classLoader) {
+        try {
+            return generatedType.cast(Class.forName(className, true, classLoader).newInstance());
+        } catch (ClassNotFoundException e) {
+            return null;
+        } catch (Exception e) {
+            Log.e(ModelMetadata.class.getSimpleName(), "Could not load generated class " + className, e);
+            return null;
+        }
+    }
+
+    private static SmartStore.Type getIndexType(Field field, Index index) {
+        IndexType type = index == null ? IndexType.AUTO : index.type();
+
+        if (index != null && index.fullText()) {
+            return SmartStore.Type.full_text;
+        }
+
+        switch (type) {
+            case STRING:
+                return SmartStore.Type.string;
+            case INTEGER:
+                return SmartStore.Type.integer;
+            case FLOATING:
+                return SmartStore.Type.floating;
+            case JSON1:
+                return SmartStore.Type.json1;
+            default:
+                return inferIndexType(field.getType());
+        }
+    }
+
+    private static SmartStore.Type inferIndexType(Class<?> fieldType) {
+        if (fieldType == int.class || fieldType == long.class || fieldType == short.class || fieldType == byte.class
+                || fieldType == Integer.class || fieldType == Long.class || fieldType == Short.class || fieldType == Byte.class) {
+            return SmartStore.Type.integer;
+        }
+
+        if (fieldType == float.class || fieldType == double.class || fieldType == Float.class || fieldType == Double.class) {
+            return SmartStore.Type.floating;
+        }
+
+        if (fieldType.isPrimitive() || fieldType == Boolean.class || fieldType == String.class || fieldType == Character.class
+                || fieldType.isEnum()) {
+            return SmartStore.Type.string;
+        }
+
+        return SmartStore.Type.json1;
+    }
+
+    private static String getJsonName(Field field) {
+        JsonProperty jsonProperty = field.getAnnotation(JsonProperty.class);
+        return jsonProperty == null ? field.getName() : jsonProperty.value();
+    }
+
+    public Class<?> getModelClass() {
+        return modelClass;
+    }
+
+    public boolean isSObject() {
+        return soupName != null;
+    }
+
+    /**
+     * @return the {@link SObject} value, or null when the annotation is missing
+     */
+    public String getSoupName() {
+        return soupName;
+    }
+
+    /**
+     * @return true when the model opted into change tracking with {@link SObject#trackChanges()}
+     */
+    public boolean isTrackingChanges() {
+        return trackingChanges;
+    }
+
+    /**
+     * @return JsonProperty names keyed by java field name, falling back to the field name itself
+     */
+    public Map<String, String> getJsonNameByField() {
+        return jsonNameByField;
+    }
+
+    /**
+     * @return the type of every indexed path, the framework ones plus those marked with {@link Index}
+     */
+    public Map<String, SmartStore.Type> getIndexTypes() {
+        return indexTypes;
+    }
+
+    public List<String> getFieldsToSyncUp() {
+        return fieldsToSyncUp;
+    }
+
+    public List<String> getFieldsToSyncUpForUpdate() {
+        return fieldsToSyncUpForUpdate;
+    }
+
+    /**
+     * Built on first use since look ups are expanded with the related model's own sync down fields.
+     */
+    public List<String> getFieldsToSyncDown() {
+        List<String> fields = fieldsToSyncDown;
+
+        if (fields == null) {
+            fields = new ArrayList<>();
+
+            for (Field field : getScannedFields()) {
+                if (field.isAnnotationPresent(Ignore.class) || field.isAnnotationPresent(SoqlWhere.class)) {
+                    continue;
+                }
+
+                String jsonName = getJsonName(field);
+
+                if (field.isAnnotationPresent(LookUp.class)) {
+                    for (String relatedField : of(lookUps.get(jsonName)).getFieldsToSyncDown()) {
+                        fields.add(jsonName.concat(".").concat(relatedField));
+                    }
+                    continue;
+                }
+
+                Sync sync = field.getAnnotation(Sync.class);
+                if (sync == null || sync.down()) {
+                    fields.add(jsonName);
+                }
+            }
+
+            fields = Collections.unmodifiableList(fields);
+            fieldsToSyncDown = fields;
+        }
+
+        return fields;
+    }
+
+    /**
+     * @return the related model of each {@link LookUp} field, keyed by its JsonProperty name
+     */
+    public Map<String, Class<? extends SmartObject>> getLookUps() {
+        return lookUps;
+    }
+
+    /**
+     * Reads the {@link SoqlWhere} field on every call since the model may change it at runtime.
+     *
+     * @return the custom where, or an empty string when there is none
+     */
+    public String getCustomWhere() {
+        if (soqlWhereField == null) {
+            return "";
+        }
+
+        try {
+            return (String) modelClass.getField(soqlWhereField).get(null);
+        } catch (Exception e) {
+            Log.e(ModelMetadata.class.getSimpleName(), e.getMessage(), e);
+            return "";
+        }
+    }
+
+    /**
+     * @return the {@link DestinationLocalParent} JsonProperty name keyed by the matching {@link SourceLocalParent} field name
+     */
+    public Map<String, String> getDestinationBySource() {
+        return destinationBySource;
+    }
+
+    public Map<String, Class<? extends SmartObject>> getSourceClassBySource() {
+        return sourceClassBySource;
+    }
+
+    private List<Field> getScannedFields() {
+        List<Field> fields = new ArrayList<>();
+        if (modelClass.getSuperclass() != null) {
+            Collections.addAll(fields, modelClass.getSuperclass().getDeclaredFields());
+        }
+        Collections.addAll(fields, modelClass.getDeclaredFields());
+        return fields;
+    }
+}
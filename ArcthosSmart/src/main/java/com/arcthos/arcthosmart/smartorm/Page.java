@@ -0,0 +1,32 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a keyset paginated {@link SmartSelect}, see {@link SmartSelect#page(String, int)}.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextPageToken;
+
+    Page(List<T> items, String nextPageToken) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return opaque token to pass to the next page call, null on the last page
+     */
+    public String getNextPageToken() {
+        return nextPageToken;
+    }
+
+    public boolean hasNextPage() {
+        return nextPageToken != null;
+    }
+}
@@ -3,13 +3,18 @@ package com.arcthos.arcthosmart.smartorm;
 import android.util.Log;
 
 import com.arcthos.arcthosmart.annotations.Ignore;
-import com.arcthos.arcthosmart.annotations.SObject;
 import com.arcthos.arcthosmart.annotations.Sync;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import java.io.Serializable;
-import java.lang.annotation.Annotation;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 
 /**
@@ -50,12 +55,29 @@ public abstract class SmartObject implements Serializable, Cloneable {
     @JsonProperty(SmartObjectConstants.SOUP_ENTRY_ID)
     protected long soupEntryId;
 
+    // Fields to send on the next sync-up, null for all of them
+    @Sync(up = false, down = false)
+    @JsonProperty(SmartObjectConstants.CHANGED_FIELDS)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    protected List<String> changedFields;
+
+    @Ignore
+    @JsonIgnore
+    private transient JsonNode snapshot;
+
+    // Read through SmartSelect.select(fields...), every other field is missing
+    @Ignore
+    @JsonIgnore
+    private transient boolean partial;
+
     public SmartObject(Class<?> extendedClass) {
         this.attributes = new Attributes();
         this.soupEntryId = -1;
         this.id = UUID.randomUUID().toString();
 
-        if(!extendedClass.isAnnotationPresent(SObject.class)) {
+        ModelMetadata metadata = ModelMetadata.of(extendedClass);
+
+        if(!metadata.isSObject()) {
             try {
                 throw new SObjectAnnotationNotFoundException("SObject annotation missing in model class: " + extendedClass.getSimpleName());
             } catch (SObjectAnnotationNotFoundException e) {
@@ -65,12 +87,7 @@ public abstract class SmartObject implements Serializable, Cloneable {
             }
         }
 
-        for(Annotation annotation : extendedClass.getAnnotations()) {
-            if(annotation instanceof SObject){
-                this.attributes.setType(((SObject)annotation).value());
-                return;
-            }
-        }
+        this.attributes.setType(metadata.getSoupName());
     }
 
     public void prepareCreate() {
@@ -158,6 +175,61 @@ public abstract class SmartObject implements Serializable, Cloneable {
         this.soupEntryId = soupEntryId;
     }
 
+    public List<String> getChangedFields() {
+        return changedFields;
+    }
+
+    public void setChangedFields(List<String> changedFields) {
+        this.changedFields = changedFields;
+    }
+
+    /**
+     * Json names of the fields changed since the model was read from the store.
+     *
+     * @return null when the model class doesn't track changes or the model wasn't read from the store
+     */
+    public Set<String> changedSinceLoad() {
+        if (snapshot == null) {
+            return null;
+        }
+
+        JsonNode current = ModelCodec.getMapper().valueToTree(this);
+        Set<String> changed = new LinkedHashSet<>();
+
+        Iterator<String> names = current.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!current.get(name).equals(snapshot.get(name))) {
+                changed.add(name);
+            }
+        }
+
+        names = snapshot.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!current.has(name)) {
+                changed.add(name);
+            }
+        }
+
+        return changed;
+    }
+
+    void takeSnapshot() {
+        this.snapshot = ModelCodec.getMapper().valueToTree(this);
+    }
+
+    /**
+     * True when the model only holds the fields of a projection query, Repository then refuses to save it.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    void markPartial() {
+        this.partial = true;
+    }
+
     public boolean isLocallyModified() {
         if(locallyCreated || locallyDeleted || locallyUpdated) {
             return true;
@@ -12,4 +12,5 @@ public class SmartObjectConstants {
     public static final String LOCALLY_DELETED = "__locally_deleted__";
     public static final String LOCAL = "__local__";
     public static final String SOUP_ENTRY_ID = "_soupEntryId";
+    public static final String CHANGED_FIELDS = "__changed_fields__";
 }
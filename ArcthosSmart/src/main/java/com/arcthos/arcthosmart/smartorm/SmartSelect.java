@@ -1,11 +1,15 @@
 package com.arcthos.arcthosmart.smartorm;
 
+import android.util.Base64;
 import android.util.Log;
 
-import com.arcthos.arcthosmart.annotations.SObject;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.arcthos.arcthosmart.smartorm.cache.QueryCache;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 
@@ -14,32 +18,58 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
 
 /**
  * Created by Vinicius Damiati on 03-Oct-17.
  */
 
-public class SmartSelect<T> implements Iterable {
+public class SmartSelect<T> implements Iterable<T> {
 
+    public static final int DEFAULT_PAGE_SIZE = 200;
+    // Keeps every statement well below SQLite's default limit of 999 bound variables
+    public static final int IN_CHUNK_SIZE = 500;
     private static final int LIMIT = 50000;
+    private static final String IN_CHUNK_MARKER = "#IN_CHUNK#";
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}_]+");
     private Class<T> record;
+    private ModelCodec<T> codec;
+    private ModelMetadata metadata;
     private String soup;
-    private String[] arguments;
     private String whereClause = "";
     private String orderBy;
+    private String orderByProp;
+    private boolean orderDescending;
     private String groupBy;
     private String limit;
     private String offset;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+    private String[] projection;
     private List<Object> args = new ArrayList<>();
+    private List<?> chunkedInValues;
+    private int chunkedInArgIndex;
+    private boolean emptyIn;
+    private boolean disjunctive;
+    private String matchExpression;
     private SmartStore smartStore;
 
     public SmartSelect(Class<T> record, SmartStore smartStore) {
         this.record = record;
         this.smartStore = smartStore;
+        this.codec = ModelCodec.of(record);
+        this.metadata = ModelMetadata.of(record);
         getSoup();
     }
 
@@ -49,11 +79,73 @@ public class SmartSelect<T> implements Iterable {
 
     public SmartSelect<T> orderBy(String prop) {
         this.orderBy = "{" + soup + ":" + prop + "}";
+        this.orderByProp = prop;
+        this.orderDescending = false;
         return this;
     }
 
     public SmartSelect<T> orderByDesc(String prop) {
         this.orderBy = "{" + soup + ":" + prop + "}" + " DESC";
+        this.orderByProp = prop;
+        this.orderDescending = true;
+        return this;
+    }
+
+    /**
+     * Orders by relevance to the last {@link Condition#match(Object)} condition, best matches first.
+     * Relies on the FTS5 rank, and is ignored by {@link #page(String, int)}.
+     */
+    public SmartSelect<T> orderByRank() {
+        if (matchExpression == null) {
+            throw new IllegalStateException("Rank order needs a match condition, add it first.");
+        }
+
+        if (smartStore.getFtsExtension() != SmartStore.FtsExtension.fts5) {
+            throw new IllegalStateException("Rank order is only available with FTS5.");
+        }
+
+        if (matchExpression.isEmpty()) {
+            return this;
+        }
+
+        String fts = "{" + soup + "}" + SmartStore.FTS_SUFFIX;
+        this.orderBy = "(SELECT rank FROM " + fts + " WHERE " + fts + " MATCH '" + matchExpression + "' AND rowid = {"
+                + soup + ":" + SmartStore.SOUP_ENTRY_ID + "})";
+        this.orderByProp = null;
+        this.orderDescending = false;
+        return this;
+    }
+
+    /**
+     * Selects only the given indexed fields instead of the whole soup. Results are partially
+     * populated models (or DTOs through {@link #listAs(Class)}); the _soup column and external
+     * storage are never read. Dotted paths are mapped into nested objects. Partial models are
+     * read-only, see {@link SmartObject#isPartial()}.
+     *
+     * @throws IllegalArgumentException when a field isn't indexed, SmartStore would read it from the _soup column
+     */
+    public SmartSelect<T> select(String... fields) {
+        if (fields != null) {
+            for (String field : fields) {
+                if (!isColumn(field)) {
+                    throw new IllegalArgumentException("Field " + field + " of " + record.getSimpleName() + " isn't indexed, it can't be selected alone.");
+                }
+            }
+        }
+
+        this.projection = fields == null || fields.length == 0 ? null : fields;
+        return this;
+    }
+
+    private boolean isColumn(String field) {
+        return SmartStore.SOUP_ENTRY_ID.equals(field)
+                || SmartStore.SOUP_LAST_MODIFIED_DATE.equals(field)
+                || SmartStore.SOUP_CREATED_DATE.equals(field)
+                || metadata.getIndexTypes().containsKey(field);
+    }
+
+    public SmartSelect<T> groupBy(String prop) {
+        this.groupBy = "{" + soup + ":" + prop + "}";
         return this;
     }
 
@@ -62,8 +154,19 @@ public class SmartSelect<T> implements Iterable {
         return this;
     }
 
+    public SmartSelect<T> pageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be greater than zero.");
+        }
+
+        this.pageSize = pageSize;
+        return this;
+    }
+
     public SmartSelect<T> where(String whereClause) {
         this.whereClause = whereClause;
+        resetArgs();
+        disjunctive = isRaw(whereClause);
         return this;
     }
 
@@ -81,18 +184,19 @@ public class SmartSelect<T> implements Iterable {
                 toAppend.append(" ").append(type.getName()).append(" ");
             }
 
-            if (Condition.Check.LIKE.equals(condition.getCheck()) ||
-                    Condition.Check.NOT_LIKE.equals(condition.getCheck())) {
+            if (Condition.Check.MATCH.equals(condition.getCheck()) ||
+                    Condition.Check.MATCH_PREFIX.equals(condition.getCheck())) {
+                appendMatch(toAppend, condition, type);
+            } else if (Condition.Check.IN.equals(condition.getCheck()) ||
+                    Condition.Check.NOT_IN.equals(condition.getCheck())) {
                 toAppend
                         .append("{")
                         .append(soup)
                         .append(":")
                         .append(condition.getProperty())
                         .append("} ")
-                        .append(condition.getCheckSymbol())
-                        .append("'")
-                        .append(condition.getValue().toString().replace("'", "''"))
-                        .append("'");
+                        .append(condition.getCheckSymbol());
+                appendInValues(toAppend, condition, type);
             } else if (Condition.Check.IS_NULL.equals(condition.getCheck()) ||
                     Condition.Check.IS_NOT_NULL.equals(condition.getCheck())) {
                 toAppend
@@ -110,9 +214,7 @@ public class SmartSelect<T> implements Iterable {
                         .append(condition.getProperty())
                         .append("} ")
                         .append(condition.getCheckSymbol())
-                        .append("'")
-                        .append(condition.getValue().toString().replace("'", "''"))
-                        .append("'");
+                        .append("?");
                 args.add(condition.getValue());
             }
         }
@@ -121,9 +223,131 @@ public class SmartSelect<T> implements Iterable {
             whereClause += " " + type.getName() + " " + type.getOpeningSymbol();
         }
 
+        if (Condition.Type.OR.getName().equals(type.getName())) {
+            disjunctive = true;
+        }
+
         whereClause += "(" + toAppend + ")" + type.getClosingSymbol();
     }
 
+    private void appendInValues(StringBuilder toAppend, Condition condition, Condition.Type type) {
+        List<?> values = (List<?>) condition.getValue();
+
+        if (values.isEmpty()) {
+            // SQLite accepts an empty list: IN () is always false and NOT IN () always true
+            toAppend.append("()");
+            if (Condition.Check.IN.equals(condition.getCheck()) && Condition.Type.AND.getName().equals(type.getName())) {
+                emptyIn = true;
+            }
+            return;
+        }
+
+        if (values.size() <= IN_CHUNK_SIZE) {
+            toAppend.append("(").append(placeholders(values.size())).append(")");
+            args.addAll(values);
+            return;
+        }
+
+        if (Condition.Check.IN.equals(condition.getCheck()) && chunkedInValues == null) {
+            // Run once per chunk and merge, see buildQuerySpecs
+            toAppend.append("(").append(IN_CHUNK_MARKER).append(")");
+            chunkedInValues = values;
+            chunkedInArgIndex = args.size();
+            return;
+        }
+
+        // NOT IN (or a second oversized IN) can't be split into independent queries: bind the values as one
+        // JSON array, numbers stay numbers
+        try {
+            toAppend.append("(SELECT value FROM json_each(?))");
+            args.add(ModelCodec.getMapper().writeValueAsString(values));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Values of " + condition.getProperty() + " can't be written as a JSON array.", e);
+        }
+    }
+
+    /**
+     * Selects the matching _soupEntryIds from the FTS table of the soup. As in SmartStore match queries the
+     * expression is inlined, since the FTS column references it holds can't be bound; it only keeps the
+     * words of the term, so it never needs escaping.
+     */
+    private void appendMatch(StringBuilder toAppend, Condition condition, Condition.Type type) {
+        String property = condition.getProperty();
+        Map<String, SmartStore.Type> indexTypes = metadata.getIndexTypes();
+
+        if (property == null ? !indexTypes.containsValue(SmartStore.Type.full_text)
+                : indexTypes.get(property) != SmartStore.Type.full_text) {
+            throw new IllegalArgumentException((property == null ? record.getSimpleName() + " has no field" : property + " is not")
+                    + " indexed with @Index(fullText = true).");
+        }
+
+        String qualifier = property == null ? "" : "{" + soup + ":" + property + "}:";
+        String suffix = Condition.Check.MATCH_PREFIX.equals(condition.getCheck()) ? "*" : "";
+        String term = condition.getValue() == null ? "" : condition.getValue().toString().toLowerCase(Locale.ROOT);
+        StringBuilder expression = new StringBuilder();
+
+        for (String word : NON_WORD.split(term)) {
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            if (expression.length() > 0) {
+                expression.append(" ");
+            }
+            expression.append(qualifier).append(word).append(suffix);
+        }
+
+        matchExpression = expression.toString();
+        toAppend.append("{").append(soup).append(":").append(SmartStore.SOUP_ENTRY_ID).append("} IN ");
+
+        if (expression.length() == 0) {
+            // No word to search: matches nothing, like an empty IN
+            toAppend.append("()");
+            if (Condition.Type.AND.getName().equals(type.getName())) {
+                emptyIn = true;
+            }
+            return;
+        }
+
+        String fts = "{" + soup + "}" + SmartStore.FTS_SUFFIX;
+        toAppend.append("(SELECT rowid FROM ").append(fts).append(" WHERE ").append(fts)
+                .append(" MATCH '").append(matchExpression).append("')");
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                placeholders.append(", ");
+            }
+            placeholders.append("?");
+        }
+        return placeholders.toString();
+    }
+
+    private void resetArgs() {
+        args.clear();
+        chunkedInValues = null;
+        emptyIn = false;
+        disjunctive = false;
+        matchExpression = null;
+    }
+
+    /**
+     * True when an empty IN is AND'ed into a where clause only built from conditions without OR, so the
+     * query can't return anything.
+     */
+    boolean isEmptyResult() {
+        return emptyIn && !disjunctive;
+    }
+
+    /**
+     * A raw where clause may hold an OR that the next conditions are AND'ed to, it is never short-circuited.
+     */
+    private static boolean isRaw(String whereClause) {
+        return whereClause != null && !whereClause.trim().isEmpty();
+    }
+
     public SmartSelect<T> whereOr(Condition... args) {
         mergeConditions(args, Condition.Type.OR);
         return this;
@@ -159,40 +383,30 @@ public class SmartSelect<T> implements Iterable {
         return this;
     }
 
+    /**
+     * Filters on field IN (...) with bound parameters. Lists above {@link #IN_CHUNK_SIZE} values are
+     * queried in chunks whose results are merged (limit and order then apply per chunk).
+     * An empty or null list matches nothing and doesn't touch the database.
+     */
     public SmartSelect<T> in(List<String> args, String field) {
-        if(args == null) {
-            return and(Condition.prop(field).eq("BlueBear powered by Arcthos Inc."));
-        }
-
-        if(args.isEmpty()) {
-            return and(Condition.prop(field).eq("BlueBear powered by Arcthos Inc."));
-        }
-
-        Condition[] conditions = new Condition[args.size()];
-
-        for(int i = 0; i < args.size(); i++) {
-            Condition condition = Condition.prop(field).eq(args.get(i));
-            conditions[i] = condition;
-        }
-
-        return or(conditions);
+        return and(Condition.prop(field).in(args));
     }
 
     public SmartSelect<T> notIn(List<String> args, String field) {
         if (args == null || args.isEmpty()) return this;
-        Condition[] conditions = new Condition[args.size()];
-
-        for (int i = 0; i < args.size(); ++i) {
-            Condition condition = Condition.prop(field).notEq(args.get(i));
-            conditions[i] = condition;
-        }
 
-        return this.and(conditions);
+        return and(Condition.prop(field).notIn(args));
     }
 
     public SmartSelect<T> where(String whereClause, String[] args) {
         this.whereClause = whereClause;
-        this.arguments = args;
+        resetArgs();
+        disjunctive = isRaw(whereClause);
+
+        if (args != null) {
+            this.args.addAll(Arrays.asList(args));
+        }
+
         return this;
     }
 
@@ -202,146 +416,553 @@ public class SmartSelect<T> implements Iterable {
             return null;
         }
 
-        if(!record.isAnnotationPresent(SObject.class)) {
+        if(!metadata.isSObject()) {
             Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
             return null;
         }
 
-        if (arguments == null) {
-            arguments = convertArgs(args);
+        if (isEmptyResult()) {
+            return new ArrayList<>();
         }
 
-        String sql = toSql();
-        QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(sql, LIMIT);
+        return drain(new PagedIterator<>(codec));
+    }
 
-        try {
-            JSONArray results = smartStore.query(querySpec, 0);
-            JSONArray tmpResults = new JSONArray();
+    /**
+     * Lists the results mapped into a lightweight DTO instead of the model class,
+     * typically combined with {@link #select(String...)}.
+     */
+    public <D> List<D> listAs(Class<D> dtoClass) {
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return null;
+        }
 
-            for (int i = 0; i < results.length(); i++) {
-                tmpResults.put(results.getJSONArray(i).getJSONObject(0));
-            }
+        if (isEmptyResult()) {
+            return new ArrayList<>();
+        }
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            List<T> models = objectMapper.readValue(tmpResults.toString(), objectMapper.getTypeFactory().constructCollectionType(List.class, record));
+        return drain(new PagedIterator<>(ModelCodec.of(dtoClass)));
+    }
+
+    private <D> List<D> drain(Iterator<D> iterator) {
+        List<D> models = new ArrayList<>();
+
+        try {
+            while (iterator.hasNext()) {
+                models.add(iterator.next());
+            }
 
             return models;
 
-        } catch (JSONException e) {
-            Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
-            return new ArrayList<>();
-        } catch (JsonParseException e) {
-            Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
-            return new ArrayList<>();
-        } catch (JsonMappingException e) {
+        } catch (SmartSelectException e) {
             Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
             return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Deletes the matching rows, with their full-text rows and external storage, in one transaction
+     * and without loading them. Order and limit apply, e.g. to purge the oldest rows only.
+     *
+     * @return number of deleted rows
+     * @throws IllegalStateException when a limit or offset is combined with an IN list larger than
+     *                               {@link #IN_CHUNK_SIZE}, which would apply per chunk
+     */
+    public int delete() {
+        if (chunkedInValues != null && (limit != null || offset != null)) {
+            throw new IllegalStateException("Limit and offset can't be used to delete with more than " + IN_CHUNK_SIZE + " IN values.");
+        }
+
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return 0;
+        }
+
+        if (isEmptyResult()) {
+            return 0;
+        }
+
+        String sql = toSql("{" + soup + ":" + SmartStore.SOUP_ENTRY_ID + "}", null, true);
+        int deleted = 0;
+
+        synchronized (smartStore.getDatabase()) {
+            smartStore.beginTransaction();
+
+            try {
+                for (QuerySpec querySpec : buildQuerySpecs(sql, Integer.MAX_VALUE)) {
+                    deleted += smartStore.deleteByQuery(soup, querySpec, false);
+                }
+
+                smartStore.setTransactionSuccessful();
+            } finally {
+                smartStore.endTransaction();
+            }
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Keyset pagination: seeks straight after the last row of the previous page on the orderBy index
+     * and _soupEntryId, instead of skipping rows with an OFFSET, so deep pages cost as much as the first.
+     * Rows with a null orderBy value come first in ascending order and last in descending order.
+     * Limit, offset and groupBy are ignored.
+     *
+     * @param pageToken {@link Page#getNextPageToken()} of the previous page, null for the first page
+     */
+    public Page<T> page(String pageToken, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must be greater than zero.");
+        }
+
+        PageKey after = pageToken == null ? null : PageKey.decode(pageToken, orderByProp, orderDescending);
+
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return new Page<>(new ArrayList<T>(), null);
+        }
+
+        if (isEmptyResult()) {
+            return new Page<>(new ArrayList<T>(), null);
+        }
+
+        String entryIdColumn = "{" + soup + ":" + SmartStore.SOUP_ENTRY_ID + "}";
+        String orderColumn = orderByProp == null ? null : "{" + soup + ":" + orderByProp + "}";
+        String direction = orderDescending ? " DESC" : "";
+        List<Object> seekArgs = new ArrayList<>();
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("SELECT ").append(orderColumn == null ? "NULL" : orderColumn)
+                .append(", ").append(entryIdColumn)
+                .append(", ").append(rowColumns())
+                .append(" FROM {").append(soup).append("} ");
+
+        String seek = after == null ? null : seekPredicate(orderColumn, entryIdColumn, orderDescending, after, seekArgs);
+        boolean filtered = whereClause != null && !whereClause.equals("");
+
+        if (filtered && seek != null) {
+            sql.append("WHERE (").append(whereClause).append(") AND (").append(seek).append(") ");
+        } else if (filtered) {
+            sql.append("WHERE ").append(whereClause).append(" ");
+        } else if (seek != null) {
+            sql.append("WHERE ").append(seek).append(" ");
+        }
+
+        sql.append("ORDER BY ");
+        if (orderColumn != null) {
+            sql.append(orderColumn).append(direction).append(", ");
+        }
+        sql.append(entryIdColumn).append(direction);
+
+        try {
+            List<QuerySpec> querySpecs = buildQuerySpecs(sql.toString(), size + 1, seekArgs);
+            List<JsonNode> rows = new ArrayList<>();
+
+            for (QuerySpec querySpec : querySpecs) {
+                StringBuilder results = new StringBuilder();
+                queryAsString(results, querySpec, 0);
+
+                for (JsonNode row : ModelCodec.getMapper().readTree(results.toString())) {
+                    rows.add(row);
+                }
+            }
+
+            if (querySpecs.size() > 1) {
+                // Each IN chunk is ordered on its own: merge them
+                Collections.sort(rows, new Comparator<JsonNode>() {
+                    @Override
+                    public int compare(JsonNode row, JsonNode other) {
+                        return compareRows(row, other);
+                    }
+                });
+            }
+
+            List<T> items = new ArrayList<>();
+            for (int i = 0; i < Math.min(size, rows.size()); i++) {
+                JsonNode row = rows.get(i);
+                items.add(projection == null ? codec.read(row.get(2)) : codec.readPartial(projectRow(row, 2)));
+            }
+
+            String nextPageToken = null;
+            if (rows.size() > size) {
+                JsonNode last = rows.get(size - 1);
+                nextPageToken = new PageKey(PageKey.valueOf(last.get(0)), last.get(1).asLong())
+                        .encode(orderByProp, orderDescending);
+            }
+
+            return new Page<>(items, nextPageToken);
+
         } catch (IOException e) {
             Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
-            return new ArrayList<>();
+            return new Page<>(new ArrayList<T>(), null);
         }
     }
 
-    public JSONArray rawList() {
-        if (arguments == null) {
-            arguments = convertArgs(args);
+    /**
+     * Rows after the given key in (orderBy, _soupEntryId) order, SQLite sorting nulls as the smallest value.
+     * Numbers are cast back from their bound text: json1 indexes are json_extract expressions without
+     * column affinity, where text would sort after every number.
+     */
+    static String seekPredicate(String orderColumn, String entryIdColumn, boolean orderDescending, PageKey after, List<Object> seekArgs) {
+        String next = orderDescending ? " < ?" : " > ?";
+
+        if (orderColumn == null) {
+            seekArgs.add(after.soupEntryId);
+            return entryIdColumn + next;
+        }
+
+        if (after.value == null) {
+            seekArgs.add(after.soupEntryId);
+            String nulls = "(" + orderColumn + " IS NULL AND " + entryIdColumn + next + ")";
+            return orderDescending ? nulls : nulls + " OR " + orderColumn + " IS NOT NULL";
+        }
+
+        String value = "?";
+        if (after.value instanceof Long) {
+            value = "CAST(? AS INTEGER)";
+        } else if (after.value instanceof Double) {
+            value = "CAST(? AS REAL)";
+        }
+
+        seekArgs.add(after.value);
+        seekArgs.add(after.value);
+        seekArgs.add(after.soupEntryId);
+        String values = orderColumn + next.replace("?", value) + " OR (" + orderColumn + " = " + value + " AND " + entryIdColumn + next + ")";
+        return orderDescending ? values + " OR " + orderColumn + " IS NULL" : values;
+    }
+
+    private int compareRows(JsonNode row, JsonNode other) {
+        int result = compareValues(row.get(0), other.get(0));
+        if (result == 0) {
+            result = Long.compare(row.get(1).asLong(), other.get(1).asLong());
+        }
+
+        return orderDescending ? -result : result;
+    }
+
+    /**
+     * Same order as SQLite: nulls, then numbers, then text.
+     */
+    private static int compareValues(JsonNode value, JsonNode other) {
+        boolean valueNull = value == null || value.isNull();
+        boolean otherNull = other == null || other.isNull();
+
+        if (valueNull || otherNull) {
+            return valueNull == otherNull ? 0 : (valueNull ? -1 : 1);
+        }
+
+        if (value.isNumber() && other.isNumber()) {
+            return Double.compare(value.asDouble(), other.asDouble());
+        }
+
+        if (value.isNumber() != other.isNumber()) {
+            return value.isNumber() ? -1 : 1;
+        }
+
+        return value.asText().compareTo(other.asText());
+    }
+
+    /**
+     * Keeps the results up to date: the query runs again after writes to its soup and the observer
+     * is only called when matching rows were added, changed or removed.
+     * The select must not be modified once live.
+     */
+    public LiveQuery<T> live() {
+        return new LiveQuery<>(this);
+    }
+
+    /**
+     * Reads every matching row once, without the 50000 rows cap of the raw queries: adds its model to the
+     * list and returns a 64-bit hash of its content by _soupEntryId, in result order. Call it under the
+     * database lock for a consistent snapshot.
+     */
+    Map<Long, Long> snapshot(List<T> models) throws IOException {
+        Map<Long, Long> hashes = new LinkedHashMap<>();
+
+        if (!metadata.isSObject() || isEmptyResult()) {
+            return hashes;
         }
 
-        if(!record.isAnnotationPresent(SObject.class)) {
+        String sql = toSql("{" + soup + ":" + SmartStore.SOUP_ENTRY_ID + "}, " + rowColumns(), groupBy, true);
+
+        for (QuerySpec querySpec : buildQuerySpecs(sql, pageSize)) {
+            for (int pageIndex = 0; ; pageIndex++) {
+                StringBuilder results = new StringBuilder();
+                queryAsString(results, querySpec, pageIndex);
+                JsonNode rows = ModelCodec.getMapper().readTree(results.toString());
+
+                for (JsonNode row : rows) {
+                    hashes.put(row.get(0).asLong(), hash(row.toString()));
+                    models.add(projection == null ? codec.read(row.get(1)) : codec.readPartial(projectRow(row, 1)));
+                }
+
+                if (rows.size() < querySpec.pageSize) {
+                    break;
+                }
+            }
+        }
+
+        return hashes;
+    }
+
+    // FNV-1a
+    private static long hash(String content) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < content.length(); i++) {
+            hash ^= content.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    String getSoupName() {
+        return soup;
+    }
+
+    SmartStore getSmartStore() {
+        return smartStore;
+    }
+
+    public JSONArray rawList() {
+        if(!metadata.isSObject()) {
             Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
             return null;
         }
 
+        JSONArray results = new JSONArray();
+
+        if (isEmptyResult()) {
+            return results;
+        }
+
         String sql = toSql();
-        QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(sql, LIMIT);
 
         try {
-            return smartStore.query(querySpec, 0);
+            for (QuerySpec querySpec : buildQuerySpecs(sql, LIMIT)) {
+                JSONArray chunkResults = query(querySpec);
+                for (int i = 0; i < chunkResults.length(); i++) {
+                    results.put(chunkResults.get(i));
+                }
+            }
+
+            return results;
         } catch (JSONException e) {
             Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
             return new JSONArray();
         }
     }
 
-    //public long count() {
-    //    if (arguments == null) {
-    //        arguments = convertArgs(args);
-    //    }
+    /**
+     * Counts matching rows (or groups, when {@link #groupBy(String)} is set) without loading any soup.
+     */
+    public int count() {
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return 0;
+        }
+
+        if (isEmptyResult()) {
+            return 0;
+        }
 
-    //    return SugarRecord.count(record, whereClause, arguments, groupBy, orderBy, limit);
-    //}
+        String sql = toSql("{" + soup + ":" + SmartStore.SOUP_ENTRY_ID + "}", groupBy, false);
+        int count = 0;
 
-    public T first() {
-        if(record == null) {
-            Log.e(SmartSelect.class.getSimpleName() + "::FIRST", "You can only do a RAW call when you are not using a model.");
-            return null;
+        for (QuerySpec querySpec : buildQuerySpecs(sql, 1)) {
+            count += countQuery(querySpec);
         }
 
-        if(!record.isAnnotationPresent(SObject.class)) {
+        return count;
+    }
+
+    public boolean exists() {
+        if(!metadata.isSObject()) {
             Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
-            return null;
+            return false;
         }
 
-        if (arguments == null) {
-            arguments = convertArgs(args);
+        if (isEmptyResult()) {
+            return false;
         }
 
-        String sql = toSql();
-        QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(sql, 1);
+        String sql = toSql("{" + soup + ":" + SmartStore.SOUP_ENTRY_ID + "}", groupBy, false);
 
         try {
-            JSONArray results = smartStore.query(querySpec, 0);
-
-            ObjectMapper objectMapper = new ObjectMapper();
-            List<T> models = new ArrayList<>();
-
-            for (int i = 0; i < results.length(); i++) {
-                T model = objectMapper.readValue(results.getJSONArray(i).getJSONObject(0).toString(), record);
-                models.add(model);
+            for (QuerySpec querySpec : buildQuerySpecs(sql, 1)) {
+                if (query(querySpec).length() > 0) {
+                    return true;
+                }
             }
 
-            return models.size() > 0 ? models.get(0) : null;
-
+            return false;
         } catch (JSONException e) {
             Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    public Double sum(String prop) {
+        return aggregate(Aggregate.SUM, prop);
+    }
+
+    public Double min(String prop) {
+        return aggregate(Aggregate.MIN, prop);
+    }
+
+    public Double max(String prop) {
+        return aggregate(Aggregate.MAX, prop);
+    }
+
+    public Double avg(String prop) {
+        return aggregate(Aggregate.AVG, prop);
+    }
+
+    /**
+     * Computes an aggregate over every matching row, ignoring {@link #groupBy(String)}.
+     * Returns null when no row matches (or every value is null).
+     */
+    public Double aggregate(Aggregate aggregate, String prop) {
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
             return null;
-        } catch (NullPointerException e) {
+        }
+
+        return runAggregate(aggregate, prop, null).get(null);
+    }
+
+    /**
+     * Computes an aggregate per value of the {@link #groupBy(String)} property.
+     */
+    public Map<String, Double> aggregateByGroup(Aggregate aggregate, String prop) {
+        Map<String, Double> aggregates = new LinkedHashMap<>();
+
+        if (groupBy == null) {
+            Log.e(SmartSelect.class.getSimpleName() + "::AGGREGATE_BY_GROUP", "You must call groupBy before aggregating by group.");
+            return aggregates;
+        }
+
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return aggregates;
+        }
+
+        return runAggregate(aggregate, prop, groupBy);
+    }
+
+    /**
+     * Runs the aggregate on every query chunk and combines the partial values per group
+     * (averages are computed from the combined sum and count).
+     */
+    private Map<String, Double> runAggregate(Aggregate aggregate, String prop, String groupByColumn) {
+        Map<String, Double> aggregates = new LinkedHashMap<>();
+
+        if (isEmptyResult()) {
+            return aggregates;
+        }
+
+        String column = "{" + soup + ":" + prop + "}";
+        String columns = Aggregate.AVG.equals(aggregate)
+                ? Aggregate.SUM.of(column) + ", " + Aggregate.COUNT.of(column)
+                : aggregate.of(column);
+        String sql = groupByColumn == null
+                ? toSql("NULL, " + columns, null, false)
+                : toSql(groupByColumn + ", " + columns, groupByColumn, true);
+
+        Map<String, double[]> partials = new LinkedHashMap<>();
+
+        try {
+            for (QuerySpec querySpec : buildQuerySpecs(sql, LIMIT)) {
+                JSONArray results = query(querySpec);
+
+                for (int i = 0; i < results.length(); i++) {
+                    JSONArray row = results.getJSONArray(i);
+                    String group = row.isNull(0) ? null : row.getString(0);
+
+                    if (row.isNull(1)) {
+                        if (!partials.containsKey(group)) {
+                            partials.put(group, null);
+                        }
+                        continue;
+                    }
+
+                    double value = row.getDouble(1);
+                    double count = Aggregate.AVG.equals(aggregate) ? row.getDouble(2) : 0;
+                    double[] partial = partials.get(group);
+
+                    if (partial == null) {
+                        partials.put(group, new double[]{value, count});
+                    } else if (Aggregate.MIN.equals(aggregate)) {
+                        partial[0] = Math.min(partial[0], value);
+                    } else if (Aggregate.MAX.equals(aggregate)) {
+                        partial[0] = Math.max(partial[0], value);
+                    } else {
+                        partial[0] += value;
+                        partial[1] += count;
+                    }
+                }
+            }
+        } catch (JSONException e) {
             Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
+        }
+
+        for (Map.Entry<String, double[]> partial : partials.entrySet()) {
+            double[] value = partial.getValue();
+
+            if (value == null || (Aggregate.AVG.equals(aggregate) && value[1] == 0)) {
+                aggregates.put(partial.getKey(), null);
+            } else {
+                aggregates.put(partial.getKey(), Aggregate.AVG.equals(aggregate) ? value[0] / value[1] : value[0]);
+            }
+        }
+
+        return aggregates;
+    }
+
+    public T first() {
+        if(record == null) {
+            Log.e(SmartSelect.class.getSimpleName() + "::FIRST", "You can only do a RAW call when you are not using a model.");
             return null;
-        } catch (JsonParseException e) {
-            Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
+        }
+
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
             return null;
-        } catch (JsonMappingException e) {
-            Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
+        }
+
+        if (isEmptyResult()) {
             return null;
-        } catch (IOException e) {
+        }
+
+        try {
+            Iterator<T> iterator = new PagedIterator<>(codec, 1);
+            return iterator.hasNext() ? iterator.next() : null;
+
+        } catch (SmartSelectException e) {
             Log.e(SmartSelect.class.getSimpleName(), e.getMessage(), e);
             return null;
         }
     }
 
     public JSONObject rawFirst() {
-        if (arguments == null) {
-            arguments = convertArgs(args);
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return null;
         }
 
-        if(!record.isAnnotationPresent(SObject.class)) {
-            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+        if (isEmptyResult()) {
             return null;
         }
 
         String sql = toSql();
-        QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(sql, 1);
 
         try {
-            JSONArray results = smartStore.query(querySpec, 0);
-
-            if(results == null) {
-                return null;
-            }
+            for (QuerySpec querySpec : buildQuerySpecs(sql, 1)) {
+                JSONArray results = query(querySpec);
 
-            if(results.length() > 0) {
-                return results.getJSONArray(0).getJSONObject(0);
+                if(results != null && results.length() > 0) {
+                    return results.getJSONArray(0).getJSONObject(0);
+                }
             }
 
             return null;
@@ -355,15 +976,39 @@ public class SmartSelect<T> implements Iterable {
         }
     }
 
-    private String toSql() {
+    String toSql() {
+        return toSql(rowColumns(), groupBy, true);
+    }
+
+    private String rowColumns() {
+        if (projection == null) {
+            return "{" + soup + ":_soup}";
+        }
+
+        StringBuilder columns = new StringBuilder();
+        for (String field : projection) {
+            if (columns.length() > 0) {
+                columns.append(", ");
+            }
+            columns.append("{").append(soup).append(":").append(field).append("}");
+        }
+
+        return columns.toString();
+    }
+
+    private String toSql(String columns, String groupByColumn, boolean ordered) {
         StringBuilder sql = new StringBuilder();
-        sql.append("SELECT {" + soup + ":_soup} FROM {" + soup + "}").append(" ");
+        sql.append("SELECT ").append(columns).append(" FROM {" + soup + "}").append(" ");
 
         if (whereClause != null && !whereClause.equals("")) {
             sql.append("WHERE ").append(whereClause).append(" ");
         }
 
-        if (orderBy != null) {
+        if (groupByColumn != null) {
+            sql.append("GROUP BY ").append(groupByColumn).append(" ");
+        }
+
+        if (ordered && orderBy != null) {
             sql.append("ORDER BY ").append(orderBy).append(" ");
         }
 
@@ -378,6 +1023,63 @@ public class SmartSelect<T> implements Iterable {
         return sql.toString();
     }
 
+    /**
+     * Runs the query through the {@link QueryCache} of the store when one is enabled.
+     */
+    private JSONArray query(QuerySpec querySpec) throws JSONException {
+        QueryCache cache = QueryCache.get(smartStore);
+        if (cache == null) {
+            return smartStore.query(querySpec, 0);
+        }
+
+        return new JSONArray(cache.query(smartStore, querySpec, 0));
+    }
+
+    private void queryAsString(StringBuilder results, QuerySpec querySpec, int pageIndex) {
+        QueryCache cache = QueryCache.get(smartStore);
+        if (cache == null) {
+            smartStore.queryAsString(results, querySpec, pageIndex);
+        } else {
+            results.append(cache.query(smartStore, querySpec, pageIndex));
+        }
+    }
+
+    private int countQuery(QuerySpec querySpec) {
+        QueryCache cache = QueryCache.get(smartStore);
+        return cache == null ? smartStore.countQuery(querySpec) : cache.count(smartStore, querySpec);
+    }
+
+    /**
+     * One query spec, or one per chunk when an IN list was too large to bind in a single statement.
+     */
+    List<QuerySpec> buildQuerySpecs(String sql, int pageSize) {
+        return buildQuerySpecs(sql, pageSize, Collections.emptyList());
+    }
+
+    /**
+     * @param trailingArgs bound after the where clause arguments
+     */
+    private List<QuerySpec> buildQuerySpecs(String sql, int pageSize, List<?> trailingArgs) {
+        if (chunkedInValues == null) {
+            List<Object> allArgs = new ArrayList<>(args);
+            allArgs.addAll(trailingArgs);
+            return Collections.singletonList(QuerySpec.buildSmartQuerySpec(sql, pageSize, convertArgs(allArgs)));
+        }
+
+        List<QuerySpec> querySpecs = new ArrayList<>();
+
+        for (int start = 0; start < chunkedInValues.size(); start += IN_CHUNK_SIZE) {
+            List<?> chunk = chunkedInValues.subList(start, Math.min(start + IN_CHUNK_SIZE, chunkedInValues.size()));
+            List<Object> chunkArgs = new ArrayList<>(args);
+            chunkArgs.addAll(chunkedInArgIndex, chunk);
+            chunkArgs.addAll(trailingArgs);
+
+            querySpecs.add(QuerySpec.buildSmartQuerySpec(sql.replace(IN_CHUNK_MARKER, placeholders(chunk.size())), pageSize, convertArgs(chunkArgs)));
+        }
+
+        return querySpecs;
+    }
+
     private String[] convertArgs(List<Object> argsList) {
         String[] argsArray = new String[argsList.size()];
 
@@ -389,21 +1091,240 @@ public class SmartSelect<T> implements Iterable {
     }
 
     private void getSoup() {
-        if(!record.isAnnotationPresent(SObject.class)) {
+        if(!metadata.isSObject()) {
             Log.e(SmartObject.class.getSimpleName() + "::GET_SOUP", "SObject annotation missing in model class: " + record.getSimpleName());
             this.soup = "";
             return;
         }
 
-        for(Annotation annotation : record.getAnnotations()) {
-            if(annotation instanceof SObject){
-                this.soup = ((SObject)annotation).value();
+        this.soup = metadata.getSoupName();
+    }
+
+    /**
+     * Lazily pages through the results, deserializing one model at a time,
+     * so memory stays bounded by the page size whatever the size of the result.
+     * Failures while paging are thrown as {@link SmartSelectException}.
+     */
+    @Override
+    public Iterator<T> iterator() {
+        if(!metadata.isSObject()) {
+            Log.e(SmartObject.class.getSimpleName(), "SObject annotation missing in model class: " + record.getSimpleName());
+            return Collections.<T>emptyList().iterator();
+        }
+
+        if (isEmptyResult()) {
+            return Collections.<T>emptyList().iterator();
+        }
+
+        return new PagedIterator<>(codec);
+    }
+
+    public enum Aggregate {
+        COUNT("count"),
+        SUM("sum"),
+        MIN("min"),
+        MAX("max"),
+        AVG("avg");
+
+        private final String function;
+
+        Aggregate(String function) {
+            this.function = function;
+        }
+
+        String of(String column) {
+            return function + "(" + column + ")";
+        }
+    }
+
+    private <D> D readRow(JsonParser parser, ModelCodec<D> rowCodec) throws IOException {
+        if (projection == null) {
+            // Row is [soup]: bind the soup straight from the parser, then skip to the end of the row
+            D model = null;
+            if (parser.nextToken() == JsonToken.START_OBJECT) {
+                model = rowCodec.loaded(rowCodec.getReader().<D>readValue(parser));
             }
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                parser.skipChildren();
+            }
+            return model;
         }
+
+        return rowCodec.readPartial(projectRow(ModelCodec.getMapper().readTree(parser), 0));
     }
 
-    @Override
-    public Iterator iterator() {
-        return null;
+    /**
+     * Maps the projected columns of a row, starting at firstColumn, into a json object.
+     */
+    private ObjectNode projectRow(JsonNode row, int firstColumn) {
+        ObjectNode node = ModelCodec.getMapper().createObjectNode();
+
+        for (int i = 0; i < projection.length; i++) {
+            ObjectNode parent = node;
+            String[] path = projection[i].split("\\.");
+
+            for (int j = 0; j < path.length - 1; j++) {
+                JsonNode child = parent.get(path[j]);
+                parent = child instanceof ObjectNode ? (ObjectNode) child : parent.putObject(path[j]);
+            }
+
+            JsonNode value = row.get(firstColumn + i);
+            parent.set(path[path.length - 1], value == null ? NullNode.getInstance() : value);
+        }
+
+        return node;
+    }
+
+    /**
+     * Last row of a page, encoded as the opaque page token.
+     */
+    static class PageKey {
+        // String, Long or Double, keeping the type of the orderBy value
+        final Object value;
+        final long soupEntryId;
+
+        PageKey(Object value, long soupEntryId) {
+            this.value = value;
+            this.soupEntryId = soupEntryId;
+        }
+
+        static Object valueOf(JsonNode value) {
+            if (value == null || value.isNull()) {
+                return null;
+            }
+
+            if (value.isIntegralNumber()) {
+                return value.asLong();
+            }
+
+            return value.isNumber() ? (Object) value.asDouble() : value.asText();
+        }
+
+        String encode(String orderByProp, boolean descending) {
+            JSONArray token = new JSONArray();
+            token.put(orderByProp == null ? JSONObject.NULL : orderByProp);
+            token.put(descending);
+            token.put(value == null ? JSONObject.NULL : value);
+            token.put(soupEntryId);
+
+            return Base64.encodeToString(token.toString().getBytes(StandardCharsets.UTF_8), Base64.URL_SAFE | Base64.NO_WRAP);
+        }
+
+        static PageKey decode(String pageToken, String orderByProp, boolean descending) {
+            JSONArray token;
+            try {
+                token = new JSONArray(new String(Base64.decode(pageToken, Base64.URL_SAFE), StandardCharsets.UTF_8));
+            } catch (JSONException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid page token: " + pageToken, e);
+            }
+
+            String tokenOrderByProp = token.isNull(0) ? null : token.optString(0);
+            if (!(orderByProp == null ? tokenOrderByProp == null : orderByProp.equals(tokenOrderByProp))
+                    || token.optBoolean(1) != descending) {
+                throw new IllegalArgumentException("Page token was created for another order: " + pageToken);
+            }
+
+            Object value = token.isNull(2) ? null : token.opt(2);
+            if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+                value = ((Number) value).doubleValue();
+            } else if (value instanceof Number) {
+                value = ((Number) value).longValue();
+            } else if (value != null) {
+                value = value.toString();
+            }
+
+            return new PageKey(value, token.optLong(3));
+        }
+    }
+
+    /**
+     * Pages through the results with SmartStore.queryAsString, which builds each page as a json string
+     * straight from the cursor, and binds models from a streaming parser so org.json is never involved.
+     */
+    private class PagedIterator<D> implements Iterator<D> {
+        private final ModelCodec<D> rowCodec;
+        private final List<QuerySpec> querySpecs;
+        private int querySpecIndex = 0;
+        private int pageIndex = 0;
+        private JsonParser parser;
+        private int rowsInPage = 0;
+        private boolean rowReady = false;
+        private boolean lastPage = false;
+
+        PagedIterator(ModelCodec<D> rowCodec) {
+            this(rowCodec, pageSize);
+        }
+
+        PagedIterator(ModelCodec<D> rowCodec, int pageSize) {
+            this.rowCodec = rowCodec;
+            this.querySpecs = buildQuerySpecs(toSql(), pageSize);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (rowReady) {
+                return true;
+            }
+
+            try {
+                while (true) {
+                    if (parser != null) {
+                        if (parser.nextToken() == JsonToken.START_ARRAY) {
+                            rowsInPage++;
+                            rowReady = true;
+                            return true;
+                        }
+
+                        parser.close();
+                        parser = null;
+                        lastPage = rowsInPage < querySpecs.get(querySpecIndex).pageSize;
+                    }
+
+                    if (lastPage) {
+                        // Move on to the next IN chunk, if any
+                        if (querySpecIndex + 1 >= querySpecs.size()) {
+                            return false;
+                        }
+
+                        querySpecIndex++;
+                        pageIndex = 0;
+                        lastPage = false;
+                    }
+
+                    loadPage();
+                }
+            } catch (IOException e) {
+                throw new SmartSelectException("Failed to load page " + (pageIndex - 1) + " of " + soup, e);
+            }
+        }
+
+        private void loadPage() throws IOException {
+            StringBuilder page = new StringBuilder();
+            queryAsString(page, querySpecs.get(querySpecIndex), pageIndex++);
+
+            parser = ModelCodec.getMapper().getFactory().createParser(page.toString());
+            parser.nextToken(); // opening [ of the page
+            rowsInPage = 0;
+        }
+
+        @Override
+        public D next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            rowReady = false;
+
+            try {
+                return readRow(parser, rowCodec);
+            } catch (IOException e) {
+                throw new SmartSelectException("Failed to read " + rowCodec.getModelClass().getSimpleName() + " from " + soup, e);
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 }
@@ -0,0 +1,11 @@
+package com.arcthos.arcthosmart.smartorm;
+
+/**
+ * Thrown when a lazily evaluated SmartSelect fails while loading or reading results.
+ */
+
+public class SmartSelectException extends RuntimeException {
+    public SmartSelectException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
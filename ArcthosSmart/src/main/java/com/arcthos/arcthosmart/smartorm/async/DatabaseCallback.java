@@ -0,0 +1,10 @@
+package com.arcthos.arcthosmart.smartorm.async;
+
+/**
+ * Result of an asynchronous database call, always delivered on the main thread.
+ */
+public interface DatabaseCallback<V> {
+    void onSuccess(V result);
+
+    void onError(Exception e);
+}
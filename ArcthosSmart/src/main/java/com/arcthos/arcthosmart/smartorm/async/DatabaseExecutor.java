@@ -0,0 +1,141 @@
+package com.arcthos.arcthosmart.smartorm.async;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded executor owning every asynchronous SmartStore call of the framework.
+ *
+ * Reads run on a small pool and writes on a single thread, so writes keep their submission order
+ * and never queue behind long reads. A read and a write submitted together may run in any order,
+ * chain them in the callback when the read must see the write.
+ */
+public class DatabaseExecutor {
+    public static final int DEFAULT_READ_THREADS = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 128;
+
+    private static DatabaseExecutor instance;
+
+    private final ThreadPoolExecutor readLane;
+    private final ThreadPoolExecutor writeLane;
+    private final Handler mainHandler;
+    private final ConcurrentMap<Object, DatabaseTask<?>> inFlightReads = new ConcurrentHashMap<>();
+
+    public DatabaseExecutor(int readThreads, int queueCapacity) {
+        this.readLane = new ThreadPoolExecutor(readThreads, readThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new DatabaseThreadFactory("arcthos-db-read-"));
+        this.writeLane = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity), new DatabaseThreadFactory("arcthos-db-write-"));
+        this.mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public static synchronized DatabaseExecutor getInstance() {
+        if (instance == null) {
+            instance = new DatabaseExecutor(DEFAULT_READ_THREADS, DEFAULT_QUEUE_CAPACITY);
+        }
+
+        return instance;
+    }
+
+    /**
+     * Runs a read, joining the identical one already in flight when the key matches. Callers that joined
+     * get the same result instance, e.g. the same list and models, it must be treated as read-only.
+     *
+     * @param key identifies identical reads, null to never coalesce
+     */
+    @SuppressWarnings("unchecked")
+    public <V> DatabaseFuture<V> read(Object key, Callable<V> callable, DatabaseCallback<V> callback) {
+        if (key == null) {
+            return submit(readLane, new DatabaseTask<V>(callable, null, this, mainHandler), callback);
+        }
+
+        while (true) {
+            DatabaseTask<V> inFlight = (DatabaseTask<V>) inFlightReads.get(key);
+
+            if (inFlight != null) {
+                DatabaseFuture<V> future = inFlight.subscribe(callback);
+                if (future != null) {
+                    return future;
+                }
+
+                inFlightReads.remove(key, inFlight);
+                continue;
+            }
+
+            DatabaseTask<V> task = new DatabaseTask<V>(callable, key, this, mainHandler);
+            if (inFlightReads.putIfAbsent(key, task) == null) {
+                return submit(readLane, task, callback);
+            }
+        }
+    }
+
+    public <V> DatabaseFuture<V> write(Callable<V> callable, DatabaseCallback<V> callback) {
+        return submit(writeLane, new DatabaseTask<V>(callable, null, this, mainHandler), callback);
+    }
+
+    public int getReadQueueSize() {
+        return readLane.getQueue().size();
+    }
+
+    public int getWriteQueueSize() {
+        return writeLane.getQueue().size();
+    }
+
+    public int getInFlightReadCount() {
+        return inFlightReads.size();
+    }
+
+    public void shutdown() {
+        readLane.shutdown();
+        writeLane.shutdown();
+    }
+
+    void onDone(DatabaseTask<?> task) {
+        if (task.getKey() != null) {
+            inFlightReads.remove(task.getKey(), task);
+        }
+    }
+
+    private <V> DatabaseFuture<V> submit(ThreadPoolExecutor lane, DatabaseTask<V> task, DatabaseCallback<V> callback) {
+        DatabaseFuture<V> future = task.subscribe(callback);
+
+        try {
+            lane.execute(task);
+        } catch (RejectedExecutionException e) {
+            task.reject(e);
+        }
+
+        return future;
+    }
+
+    private static class DatabaseThreadFactory implements ThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DatabaseThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }
+            }, prefix + count.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.arcthos.arcthosmart.smartorm.async;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Handle of one caller on a database task.
+ *
+ * A coalesced read is shared by several callers, cancelling a handle only stops its callback
+ * and the task itself is cancelled once every caller has cancelled.
+ */
+public class DatabaseFuture<V> implements Future<V> {
+    private final DatabaseTask<V> task;
+    private final DatabaseCallback<V> callback;
+    private volatile boolean cancelled;
+
+    DatabaseFuture(DatabaseTask<V> task, DatabaseCallback<V> callback) {
+        this.task = task;
+        this.callback = callback;
+    }
+
+    DatabaseCallback<V> getCallback() {
+        return callback;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (cancelled || task.isDone()) {
+            return false;
+        }
+
+        cancelled = true;
+        task.unsubscribe(this, mayInterruptIfRunning);
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+        return cancelled || task.isDone();
+    }
+
+    @Override
+    public V get() throws InterruptedException, ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+
+        return task.get();
+    }
+
+    @Override
+    public V get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+
+        return task.get(timeout, unit);
+    }
+}
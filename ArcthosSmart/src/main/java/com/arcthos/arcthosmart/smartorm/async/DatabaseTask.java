@@ -0,0 +1,103 @@
+package com.arcthos.arcthosmart.smartorm.async;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Database work shared by the callers subscribed to it, each one getting its own {@link DatabaseFuture}.
+ */
+class DatabaseTask<V> extends FutureTask<V> {
+    private final Object key;
+    private final DatabaseExecutor executor;
+    private final Handler handler;
+    private final List<DatabaseFuture<V>> subscribers = new ArrayList<>();
+
+    DatabaseTask(Callable<V> callable, Object key, DatabaseExecutor executor, Handler handler) {
+        super(callable);
+        this.key = key;
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    Object getKey() {
+        return key;
+    }
+
+    /**
+     * @return the caller handle, or null when the task already completed and can not be joined anymore
+     */
+    synchronized DatabaseFuture<V> subscribe(DatabaseCallback<V> callback) {
+        if (isDone()) {
+            return null;
+        }
+
+        DatabaseFuture<V> future = new DatabaseFuture<>(this, callback);
+        subscribers.add(future);
+        return future;
+    }
+
+    synchronized void unsubscribe(DatabaseFuture<V> future, boolean mayInterruptIfRunning) {
+        subscribers.remove(future);
+
+        if (subscribers.isEmpty()) {
+            cancel(mayInterruptIfRunning);
+        }
+    }
+
+    void reject(Exception e) {
+        setException(e);
+    }
+
+    @Override
+    protected void done() {
+        executor.onDone(this);
+
+        List<DatabaseFuture<V>> toNotify;
+        synchronized (this) {
+            toNotify = new ArrayList<>(subscribers);
+        }
+
+        V result = null;
+        Exception error = null;
+        try {
+            result = get();
+        } catch (CancellationException e) {
+            return;
+        } catch (ExecutionException e) {
+            error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } catch (InterruptedException e) {
+            error = e;
+        }
+
+        for (DatabaseFuture<V> future : toNotify) {
+            deliver(future, result, error);
+        }
+    }
+
+    private void deliver(final DatabaseFuture<V> future, final V result, final Exception error) {
+        if (future.getCallback() == null) {
+            return;
+        }
+
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (future.isCancelled()) {
+                    return;
+                }
+
+                if (error == null) {
+                    future.getCallback().onSuccess(result);
+                } else {
+                    future.getCallback().onError(error);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,289 @@
+package com.arcthos.arcthosmart.smartorm.cache;
+
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional identity map for one model class in one SmartStore database.
+ *
+ * Entries are kept in a size-bounded LRU keyed by _soupEntryId, also reachable by Id, and hold their
+ * models through weak references, so the cache never keeps a model alive on its own. Every write to
+ * the soup, including sync-down, evicts the written entries. Cached models are shared instances:
+ * callers that change one should save it through the Repository.
+ */
+public class EntityCache<T extends SmartObject> {
+    private static final Map<SQLiteDatabase, Map<Class<?>, EntityCache<?>>> CACHES = new WeakHashMap<>();
+
+    private final String soupName;
+    private final LruMap<T> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    EntityCache(String soupName, int maxSize) {
+        this.soupName = soupName;
+        this.entries = new LruMap<>(maxSize);
+    }
+
+    public static synchronized <T extends SmartObject> EntityCache<T> enable(SmartStore store, Class<T> modelClass, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Entity cache size must be greater than zero.");
+        }
+
+        SQLiteDatabase database = store.getDatabase();
+        Map<Class<?>, EntityCache<?>> storeCaches = CACHES.get(database);
+        if (storeCaches == null) {
+            storeCaches = new HashMap<>();
+            CACHES.put(database, storeCaches);
+            store.registerSoupChangeListener(new InvalidationListener(storeCaches));
+        }
+
+        EntityCache<T> cache = new EntityCache<>(getSoup(modelClass), maxSize);
+        synchronized (storeCaches) {
+            storeCaches.put(modelClass, cache);
+        }
+        return cache;
+    }
+
+    public static synchronized void disable(SmartStore store, Class<? extends SmartObject> modelClass) {
+        Map<Class<?>, EntityCache<?>> storeCaches = CACHES.get(store.getDatabase());
+        if (storeCaches != null) {
+            synchronized (storeCaches) {
+                storeCaches.remove(modelClass);
+            }
+        }
+    }
+
+    /**
+     * @return the cache enabled for this store and model, or null when caching is off
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T extends SmartObject> EntityCache<T> get(SmartStore store, Class<T> modelClass) {
+        Map<Class<?>, EntityCache<?>> storeCaches = CACHES.get(store.getDatabase());
+        if (storeCaches == null) {
+            return null;
+        }
+
+        synchronized (storeCaches) {
+            return (EntityCache<T>) storeCaches.get(modelClass);
+        }
+    }
+
+    /**
+     * Drops every cached model of the given soup. Writes through SmartStore already do this,
+     * it is only needed after changing the database behind SmartStore's back.
+     */
+    public static synchronized void invalidateSoup(SmartStore store, String soupName) {
+        Map<Class<?>, EntityCache<?>> storeCaches = CACHES.get(store.getDatabase());
+        if (storeCaches != null) {
+            invalidate(storeCaches, soupName, null);
+        }
+    }
+
+    public T getById(String id) {
+        return count(entries.getById(id));
+    }
+
+    public T getByEntryId(long soupEntryId) {
+        return count(entries.getByEntryId(soupEntryId));
+    }
+
+    public void putById(T model) {
+        if (model != null && model.getId() != null && model.getSoupEntryId() != -1) {
+            entries.putValue(model.getSoupEntryId(), model.getId(), model);
+        }
+    }
+
+    public void putByEntryId(T model) {
+        if (model != null && model.getSoupEntryId() != -1) {
+            entries.putValue(model.getSoupEntryId(), null, model);
+        }
+    }
+
+    public void invalidate(T model) {
+        if (model == null) {
+            return;
+        }
+
+        entries.removeValue(model.getSoupEntryId());
+        if (model.getId() != null) {
+            entries.removeId(model.getId());
+        }
+    }
+
+    public void invalidate(Long[] soupEntryIds) {
+        for (Long soupEntryId : soupEntryIds) {
+            entries.removeValue(soupEntryId);
+        }
+    }
+
+    public void invalidateAll() {
+        entries.clearValues();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        return entries.sizeOfValues();
+    }
+
+    public String getSoupName() {
+        return soupName;
+    }
+
+    private T count(T model) {
+        if (model == null) {
+            misses.incrementAndGet();
+        } else {
+            hits.incrementAndGet();
+        }
+
+        return model;
+    }
+
+    private static void invalidate(Map<Class<?>, EntityCache<?>> storeCaches, String soupName, Long[] soupEntryIds) {
+        synchronized (storeCaches) {
+            for (EntityCache<?> cache : storeCaches.values()) {
+                if (!cache.soupName.equals(soupName)) {
+                    continue;
+                }
+
+                if (soupEntryIds == null) {
+                    cache.invalidateAll();
+                } else {
+                    cache.invalidate(soupEntryIds);
+                }
+            }
+        }
+    }
+
+    private static String getSoup(Class<?> modelClass) {
+        String soupName = ModelMetadata.of(modelClass).getSoupName();
+        return soupName == null ? "" : soupName;
+    }
+
+    private static class InvalidationListener implements SmartStore.SoupChangeListener {
+        private final Map<Class<?>, EntityCache<?>> storeCaches;
+
+        InvalidationListener(Map<Class<?>, EntityCache<?>> storeCaches) {
+            this.storeCaches = storeCaches;
+        }
+
+        @Override
+        public void onSoupChanged(String soupName, Long[] soupEntryIds) {
+            invalidate(storeCaches, soupName, soupEntryIds);
+        }
+    }
+
+    private static class CacheEntry<V> {
+        final WeakReference<V> model;
+        final String id;
+
+        CacheEntry(V model, String id) {
+            this.model = new WeakReference<>(model);
+            this.id = id;
+        }
+    }
+
+    private static class LruMap<V> extends LinkedHashMap<Long, CacheEntry<V>> {
+        private final int maxSize;
+        private final Map<String, Long> entryIdById = new HashMap<>();
+
+        LruMap(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry<V>> eldest) {
+            if (size() <= maxSize) {
+                return false;
+            }
+
+            unindex(eldest.getKey(), eldest.getValue());
+            return true;
+        }
+
+        synchronized V getById(String id) {
+            Long soupEntryId = entryIdById.get(id);
+            return soupEntryId == null ? null : getByEntryId(soupEntryId);
+        }
+
+        synchronized V getByEntryId(long soupEntryId) {
+            CacheEntry<V> entry = get(soupEntryId);
+            if (entry == null) {
+                return null;
+            }
+
+            V value = entry.model.get();
+            if (value == null) {
+                removeValue(soupEntryId);
+            }
+
+            return value;
+        }
+
+        synchronized void putValue(long soupEntryId, String id, V value) {
+            CacheEntry<V> previous = get(soupEntryId);
+            if (id == null && previous != null && previous.model.get() == value) {
+                id = previous.id;
+            }
+
+            CacheEntry<V> replaced = put(soupEntryId, new CacheEntry<>(value, id));
+            if (replaced != null && replaced.id != null && !replaced.id.equals(id)) {
+                unindex(soupEntryId, replaced);
+            }
+
+            if (id != null) {
+                entryIdById.put(id, soupEntryId);
+            }
+        }
+
+        synchronized void removeValue(long soupEntryId) {
+            CacheEntry<V> entry = remove(soupEntryId);
+            if (entry != null) {
+                unindex(soupEntryId, entry);
+            }
+        }
+
+        synchronized void removeId(String id) {
+            Long soupEntryId = entryIdById.remove(id);
+            if (soupEntryId != null) {
+                remove(soupEntryId);
+            }
+        }
+
+        synchronized void clearValues() {
+            clear();
+            entryIdById.clear();
+        }
+
+        synchronized int sizeOfValues() {
+            return size();
+        }
+
+        private void unindex(long soupEntryId, CacheEntry<V> entry) {
+            if (entry.id != null) {
+                Long indexed = entryIdById.get(entry.id);
+                if (indexed != null && indexed == soupEntryId) {
+                    entryIdById.remove(entry.id);
+                }
+            }
+        }
+    }
+}
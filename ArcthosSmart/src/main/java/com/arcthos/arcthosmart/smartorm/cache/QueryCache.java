@@ -0,0 +1,196 @@
+package com.arcthos.arcthosmart.smartorm.cache;
+
+import android.util.LruCache;
+
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Optional cache of SmartSelect results for one SmartStore database.
+ *
+ * Results are kept as json strings in an LRU bounded by their total length, keyed by converted SQL,
+ * bound arguments and page, along with the version of every soup the query references. A result is
+ * only reused while none of these soups was written since. Queries run inside a transaction are never
+ * cached, since the transaction may still roll back.
+ */
+public class QueryCache {
+    public static final int DEFAULT_MAX_SIZE = 2 * 1024 * 1024;
+
+    private static final Map<SQLiteDatabase, QueryCache> CACHES = new WeakHashMap<>();
+    private static final Pattern SOUP_REFERENCE = Pattern.compile("\\{([^{}:]+)(:[^{}]*)?\\}");
+    private static final String COUNT_PREFIX = "COUNT:";
+
+    private final LruCache<String, CachedResult> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private QueryCache(int maxSize) {
+        this.entries = new LruCache<String, CachedResult>(maxSize) {
+            @Override
+            protected int sizeOf(String key, CachedResult value) {
+                return key.length() + value.result.length();
+            }
+        };
+    }
+
+    /**
+     * @param maxSize total length of the cached keys and results, in chars. A result longer than a
+     *                quarter of it is never cached.
+     */
+    public static synchronized QueryCache enable(SmartStore store, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Query cache size must be greater than zero.");
+        }
+
+        QueryCache cache = new QueryCache(maxSize);
+        CACHES.put(store.getDatabase(), cache);
+        return cache;
+    }
+
+    public static synchronized void disable(SmartStore store) {
+        CACHES.remove(store.getDatabase());
+    }
+
+    /**
+     * @return the cache enabled for this store, or null when caching is off
+     */
+    public static synchronized QueryCache get(SmartStore store) {
+        return CACHES.get(store.getDatabase());
+    }
+
+    /**
+     * Same as SmartStore.queryAsString, served from the cache when the referenced soups didn't change.
+     */
+    public String query(SmartStore store, QuerySpec querySpec, int pageIndex) {
+        String key = key(store.convertSmartSql(querySpec.smartSql), querySpec.getArgs()) + "|" + querySpec.pageSize + "|" + pageIndex;
+
+        synchronized (store.getDatabase()) {
+            long[] versions = versionsOf(store, querySpec.smartSql);
+            String cached = lookUp(key, versions);
+            if (cached != null) {
+                return cached;
+            }
+
+            StringBuilder result = new StringBuilder();
+            store.queryAsString(result, querySpec, pageIndex);
+            return keep(store, key, versions, result.toString());
+        }
+    }
+
+    /**
+     * Same as SmartStore.countQuery, served from the cache when the referenced soups didn't change.
+     */
+    public int count(SmartStore store, QuerySpec querySpec) {
+        String key = COUNT_PREFIX + key(store.convertSmartSql(querySpec.countSmartSql), querySpec.getArgs());
+
+        synchronized (store.getDatabase()) {
+            long[] versions = versionsOf(store, querySpec.countSmartSql);
+            String cached = lookUp(key, versions);
+            if (cached != null) {
+                return Integer.parseInt(cached);
+            }
+
+            return Integer.parseInt(keep(store, key, versions, String.valueOf(store.countQuery(querySpec))));
+        }
+    }
+
+    public void invalidateAll() {
+        entries.evictAll();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return total length of the cached keys and results, in chars
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    public int maxSize() {
+        return entries.maxSize();
+    }
+
+    public int getEntryCount() {
+        return entries.snapshot().size();
+    }
+
+    private String lookUp(String key, long[] versions) {
+        CachedResult cached = entries.get(key);
+
+        if (cached != null && Arrays.equals(cached.versions, versions)) {
+            hits.incrementAndGet();
+            return cached.result;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private String keep(SmartStore store, String key, long[] versions, String result) {
+        if (!store.getDatabase().inTransaction() && (key.length() + result.length()) <= entries.maxSize() / 4) {
+            entries.put(key, new CachedResult(result, versions));
+        }
+
+        return result;
+    }
+
+    private static String key(String sql, String[] args) {
+        StringBuilder key = new StringBuilder(sql);
+
+        if (args != null) {
+            for (String arg : args) {
+                // Length prefixed so that no argument can be mistaken for two
+                key.append('|').append(arg == null ? -1 : arg.length()).append(':').append(arg);
+            }
+        }
+
+        return key.toString();
+    }
+
+    private static long[] versionsOf(SmartStore store, String smartSql) {
+        List<String> soups = new ArrayList<>();
+        Matcher matcher = SOUP_REFERENCE.matcher(smartSql);
+
+        while (matcher.find()) {
+            String soupName = matcher.group(1);
+            if (!soups.contains(soupName)) {
+                soups.add(soupName);
+            }
+        }
+
+        long[] versions = new long[soups.size()];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = store.getSoupVersion(soups.get(i));
+        }
+
+        return versions;
+    }
+
+    private static class CachedResult {
+        final String result;
+        final long[] versions;
+
+        CachedResult(String result, long[] versions) {
+            this.result = result;
+            this.versions = versions;
+        }
+    }
+}
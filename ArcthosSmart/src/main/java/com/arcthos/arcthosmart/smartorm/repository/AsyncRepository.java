@@ -0,0 +1,261 @@
+package com.arcthos.arcthosmart.smartorm.repository;
+
+import com.arcthos.arcthosmart.smartorm.Condition;
+import com.arcthos.arcthosmart.smartorm.Page;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+import com.arcthos.arcthosmart.smartorm.async.DatabaseCallback;
+import com.arcthos.arcthosmart.smartorm.async.DatabaseExecutor;
+import com.arcthos.arcthosmart.smartorm.async.DatabaseFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Non blocking facade of a {@link Repository}, running on the framework {@link DatabaseExecutor}.
+ *
+ * Callbacks are optional and run on the main thread, the returned future can be used to wait or cancel.
+ * Identical reads in flight at the same time are run only once and share their result: the lists and
+ * models delivered are read-only, copy them before changing them (as with the models of an EntityCache).
+ */
+public class AsyncRepository<T extends SmartObject> {
+    private final Repository<T> repository;
+    private final DatabaseExecutor executor;
+
+    public AsyncRepository(Repository<T> repository) {
+        this(repository, DatabaseExecutor.getInstance());
+    }
+
+    public AsyncRepository(Repository<T> repository, DatabaseExecutor executor) {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    public Repository<T> getRepository() {
+        return repository;
+    }
+
+    /**
+     * Runs any read of this model, e.g. a custom SmartSelect.
+     *
+     * @param key identifies identical reads to coalesce, null to never coalesce
+     */
+    public <V> DatabaseFuture<V> read(Object key, Callable<V> callable, DatabaseCallback<V> callback) {
+        return executor.read(key == null ? null : key(key), callable, callback);
+    }
+
+    public <V> DatabaseFuture<V> write(Callable<V> callable, DatabaseCallback<V> callback) {
+        return executor.write(callable, callback);
+    }
+
+    public DatabaseFuture<T> find(final String id, DatabaseCallback<T> callback) {
+        return executor.read(key("find", id), new Callable<T>() {
+            @Override
+            public T call() {
+                return repository.find(id);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<T> findWithDeleteds(final String id, DatabaseCallback<T> callback) {
+        return executor.read(key("findWithDeleteds", id), new Callable<T>() {
+            @Override
+            public T call() {
+                return repository.findWithDeleteds(id);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<T> findByEntryId(final long entryId, DatabaseCallback<T> callback) {
+        return executor.read(key("findByEntryId", entryId), new Callable<T>() {
+            @Override
+            public T call() {
+                return repository.findByEntryId(entryId);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findAll(DatabaseCallback<List<T>> callback) {
+        return executor.read(key("findAll"), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findAll();
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findAllWithDeleteds(DatabaseCallback<List<T>> callback) {
+        return executor.read(key("findAllWithDeleteds"), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findAllWithDeleteds();
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findAllWithLimit(final int limit, DatabaseCallback<List<T>> callback) {
+        return executor.read(key("findAllWithLimit", limit), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findAllWithLimit(limit);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findAllOrderByAsc(final String fieldName, DatabaseCallback<List<T>> callback) {
+        return executor.read(key("findAllOrderByAsc", fieldName), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findAllOrderByAsc(fieldName);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findAllOrderByDesc(final String fieldName, DatabaseCallback<List<T>> callback) {
+        return executor.read(key("findAllOrderByDesc", fieldName), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findAllOrderByDesc(fieldName);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<Page<T>> findAllOrderByAsc(final String fieldName, final String pageToken, final int pageSize, DatabaseCallback<Page<T>> callback) {
+        return executor.read(key("findAllOrderByAsc", fieldName, pageToken, pageSize), new Callable<Page<T>>() {
+            @Override
+            public Page<T> call() {
+                return repository.findAllOrderByAsc(fieldName, pageToken, pageSize);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<Page<T>> findAllOrderByDesc(final String fieldName, final String pageToken, final int pageSize, DatabaseCallback<Page<T>> callback) {
+        return executor.read(key("findAllOrderByDesc", fieldName, pageToken, pageSize), new Callable<Page<T>>() {
+            @Override
+            public Page<T> call() {
+                return repository.findAllOrderByDesc(fieldName, pageToken, pageSize);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findByIds(List<String> ids, DatabaseCallback<List<T>> callback) {
+        final List<String> idsCopy = new ArrayList<>(ids);
+
+        return executor.read(key("findByIds", idsCopy), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findByIds(idsCopy);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> findByLocal(DatabaseCallback<List<T>> callback) {
+        return executor.read(key("findByLocal"), new Callable<List<T>>() {
+            @Override
+            public List<T> call() {
+                return repository.findByLocal();
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<Integer> countLocalRegisters(DatabaseCallback<Integer> callback) {
+        return executor.read(key("countLocalRegisters"), new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return repository.countLocalRegisters();
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<T> create(final T model, DatabaseCallback<T> callback) {
+        return executor.write(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return repository.create(model);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> createAll(final List<T> models, DatabaseCallback<List<T>> callback) {
+        return executor.write(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return repository.createAll(models);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<T> update(final T model, DatabaseCallback<T> callback) {
+        return executor.write(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return repository.update(model);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> updateAll(final List<T> models, DatabaseCallback<List<T>> callback) {
+        return executor.write(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return repository.updateAll(models);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<T> upsert(final T model, DatabaseCallback<T> callback) {
+        return executor.write(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return repository.upsert(model);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<List<T>> upsertAll(final List<T> models, DatabaseCallback<List<T>> callback) {
+        return executor.write(new Callable<List<T>>() {
+            @Override
+            public List<T> call() throws Exception {
+                return repository.upsertAll(models);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<Boolean> delete(final T model, DatabaseCallback<Boolean> callback) {
+        return executor.write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return repository.delete(model);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<Boolean> deleteAll(final List<T> models, DatabaseCallback<Boolean> callback) {
+        return executor.write(new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+                return repository.deleteAll(models);
+            }
+        }, callback);
+    }
+
+    public DatabaseFuture<Integer> deleteWhere(final Condition[] conditions, DatabaseCallback<Integer> callback) {
+        return executor.write(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return repository.deleteWhere(conditions);
+            }
+        }, callback);
+    }
+
+    // Reads of another database or model never share a key, like EntityCache and QueryCache the database
+    // identifies the store, so that two SmartStore handles on the same database coalesce
+    private Object key(Object... parts) {
+        List<Object> key = new ArrayList<>();
+        key.add(repository.store.getDatabase());
+        key.add(repository.getTypeClass());
+        key.addAll(Arrays.asList(parts));
+        return key;
+    }
+}
@@ -2,14 +2,15 @@ package com.arcthos.arcthosmart.smartorm.repository;
 
 import android.util.Log;
 
-import com.arcthos.arcthosmart.annotations.SObject;
 import com.arcthos.arcthosmart.smartorm.Condition;
 import com.arcthos.arcthosmart.smartorm.GeneralConstants;
+import com.arcthos.arcthosmart.smartorm.ModelCodec;
+import com.arcthos.arcthosmart.smartorm.ModelMetadata;
+import com.arcthos.arcthosmart.smartorm.Page;
 import com.arcthos.arcthosmart.smartorm.SmartObject;
 import com.arcthos.arcthosmart.smartorm.SmartObjectConstants;
 import com.arcthos.arcthosmart.smartorm.SmartSelect;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.arcthos.arcthosmart.smartorm.cache.EntityCache;
 import com.salesforce.androidsdk.smartstore.store.QuerySpec;
 import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.mobilesync.util.Constants;
@@ -19,60 +20,60 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.io.StringWriter;
-import java.lang.annotation.Annotation;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Created by Vinicius Damiati on 05-Oct-17.
  */
 
 public abstract class Repository<T extends SmartObject> {
+    public static final int DEFAULT_BULK_CHUNK_SIZE = 500;
+
     protected final SmartStore store;
     private String soup;
     private final Class<T> typeClass;
+    private final ModelCodec<T> codec;
+    private int bulkChunkSize = DEFAULT_BULK_CHUNK_SIZE;
 
     public Repository(final SmartStore store, final Class<T> typeClass) {
         this.store = store;
         this.typeClass = typeClass;
+        this.codec = ModelCodec.of(typeClass);
         getSoup();
     }
 
+    public Class<T> getTypeClass() {
+        return typeClass;
+    }
+
     protected SmartSelect<T> getSmartSelect() {
         return SmartSelect.from(this.store, typeClass);
     }
 
     public T create(T model) throws JSONException, IOException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-        StringWriter stringWriter = new StringWriter();
-        objectMapper.writeValue(stringWriter, model);
-        String serializedModel = stringWriter.toString();
-
-        JSONObject json = new JSONObject(serializedModel);
+        JSONObject json = codec.toJson(model);
 
         JSONObject response = store.create(soup, json);
-        return objectMapper.readValue(response.toString(), typeClass);
+        return cacheWritten(model, codec.read(response));
 
     }
 
     public List<T> createAll(List<T> models) throws JSONException, IOException {
-        List<T> responses = new ArrayList<>();
-
-        if (models == null) {
-            return responses;
-        }
-
-        if (models.isEmpty()) {
-            return responses;
+        if (models == null || models.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        for (T model : models) {
-            responses.add(create(model));
-        }
-
-        return responses;
+        return runInChunks(models, new BulkOperation<T>() {
+            @Override
+            public JSONObject apply(T model, JSONObject json) throws JSONException {
+                return store.create(soup, json, false);
+            }
+        });
     }
 
     public T update(T model) throws JSONException, RegisterNotCreatedException, IOException {
@@ -80,74 +81,212 @@ public abstract class Repository<T extends SmartObject> {
             throw new RegisterNotCreatedException("You can't update an register that was not created yet.");
         }
 
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-        StringWriter stringWriter = new StringWriter();
-        objectMapper.writeValue(stringWriter, model);
-        String serializedModel = stringWriter.toString();
+        checkComplete(model);
 
-        JSONObject json = new JSONObject(serializedModel);
+        Set<String> changed = model.changedSinceLoad();
+        if (changed != null && changed.isEmpty()) {
+            return model;
+        }
+
+        recordChanges(model, changed);
+        JSONObject json = codec.toJson(model);
 
-        JSONObject response = store.update(soup, json, model.getSoupEntryId());
-        return objectMapper.readValue(response.toString(), typeClass);
+        JSONObject response = store.update(soup, json, model.getSoupEntryId(), changed, true);
+        return cacheWritten(model, codec.read(response));
     }
 
     public List<T> updateAll(List<T> models) throws JSONException, RegisterNotCreatedException, IOException {
-        List<T> responses = new ArrayList<>();
+        if (models == null || models.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        if (models == null) {
-            return responses;
+        for (T model : models) {
+            if (model.getSoupEntryId() == -1) {
+                throw new RegisterNotCreatedException("You can't update an register that was not created yet.");
+            }
+
+            checkComplete(model);
         }
 
-        if (models.isEmpty()) {
-            return responses;
+        final Map<T, Set<String>> changes = new IdentityHashMap<>();
+        List<T> changedModels = new ArrayList<>();
+
+        for (T model : models) {
+            Set<String> changed = model.changedSinceLoad();
+            if (changed != null && changed.isEmpty()) {
+                continue;
+            }
+
+            recordChanges(model, changed);
+            changes.put(model, changed);
+            changedModels.add(model);
         }
 
+        List<T> written = runInChunks(changedModels, new BulkOperation<T>() {
+            @Override
+            public JSONObject apply(T model, JSONObject json) throws JSONException {
+                return store.update(soup, json, model.getSoupEntryId(), changes.get(model), false);
+            }
+        });
+
+        // Unchanged models were not written, they are returned as is
+        List<T> responses = new ArrayList<>(models.size());
+        int writtenIndex = 0;
         for (T model : models) {
-            responses.add(update(model));
+            responses.add(changes.containsKey(model) ? written.get(writtenIndex++) : model);
         }
 
         return responses;
     }
 
-    public T upsert(T model) throws JSONException, IOException {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.configure(SerializationFeature.INDENT_OUTPUT, true);
-        StringWriter stringWriter = new StringWriter();
-        objectMapper.writeValue(stringWriter, model);
-        String serializedModel = stringWriter.toString();
+    /**
+     * Keeps the fields to send on the next sync-up: those changed since the record was last synced,
+     * or null (every field) once a change was made without tracking.
+     */
+    private void recordChanges(T model, Set<String> changed) {
+        if (changed == null) {
+            model.setChangedFields(null);
+        } else if (changed.contains(SmartObjectConstants.LOCAL)) {
+            // First local change since the last sync
+            model.setChangedFields(new ArrayList<>(changed));
+        } else if (model.getChangedFields() != null) {
+            Set<String> pending = new LinkedHashSet<>(model.getChangedFields());
+            pending.addAll(changed);
+            model.setChangedFields(new ArrayList<>(pending));
+        }
+    }
 
-        JSONObject json = new JSONObject(serializedModel);
+    public T upsert(T model) throws JSONException, IOException {
+        checkComplete(model);
+        JSONObject json = codec.toJson(model);
 
         JSONObject response = store.upsert(soup, json);
-        return objectMapper.readValue(response.toString(), typeClass);
+        return cacheWritten(model, codec.read(response));
 
     }
 
     public List<T> upsertAll(List<T> models) throws JSONException, IOException {
-        List<T> responses = new ArrayList<>();
+        if (models == null || models.isEmpty()) {
+            return new ArrayList<>();
+        }
 
-        if (models == null) {
-            return responses;
+        for (T model : models) {
+            checkComplete(model);
         }
 
-        if (models.isEmpty()) {
-            return responses;
+        return runInChunks(models, new BulkOperation<T>() {
+            @Override
+            public JSONObject apply(T model, JSONObject json) throws JSONException {
+                return store.upsert(soup, json, SmartStore.SOUP_ENTRY_ID, false);
+            }
+        });
+    }
+
+    /**
+     * Saving a model read through SmartSelect.select(fields...) would write every other field as null.
+     */
+    private void checkComplete(T model) {
+        if (model.isPartial()) {
+            throw new IllegalArgumentException("Model of " + soup + " was read with select(fields...), it only holds the selected fields and can't be saved.");
+        }
+    }
+
+    /**
+     * Turns on the identity map shared by every Repository of this model on this store.
+     */
+    public EntityCache<T> enableEntityCache(int maxSize) {
+        return EntityCache.enable(store, typeClass, maxSize);
+    }
+
+    public void disableEntityCache() {
+        EntityCache.disable(store, typeClass);
+    }
+
+    public EntityCache<T> getEntityCache() {
+        return EntityCache.get(store, typeClass);
+    }
+
+    private T cacheWritten(T model, T written) {
+        EntityCache<T> cache = getEntityCache();
+
+        if (cache != null) {
+            cache.invalidate(model);
+            cache.putByEntryId(written);
         }
 
-        for (T model : models) {
-            responses.add(upsert(model));
+        return written;
+    }
+
+    public int getBulkChunkSize() {
+        return bulkChunkSize;
+    }
+
+    /**
+     * Sets how many records the bulk operations write per SmartStore transaction.
+     * A failure rolls back the whole chunk being written; chunks already committed are kept.
+     */
+    public void setBulkChunkSize(int bulkChunkSize) {
+        if (bulkChunkSize < 1) {
+            throw new IllegalArgumentException("Bulk chunk size must be greater than zero.");
+        }
+
+        this.bulkChunkSize = bulkChunkSize;
+    }
+
+    private List<T> runInChunks(List<T> models, BulkOperation<T> operation) throws JSONException, IOException {
+        List<T> responses = new ArrayList<>(models.size());
+
+        for (int start = 0; start < models.size(); start += bulkChunkSize) {
+            int end = Math.min(start + bulkChunkSize, models.size());
+            List<JSONObject> chunkJsons = new ArrayList<>(end - start);
+            List<JSONObject> chunkResponses = new ArrayList<>(end - start);
+
+            for (int i = start; i < end; i++) {
+                chunkJsons.add(codec.toJson(models.get(i)));
+            }
+
+            synchronized (store.getDatabase()) {
+                store.beginTransaction();
+                try {
+                    for (int i = start; i < end; i++) {
+                        JSONObject response = operation.apply(models.get(i), chunkJsons.get(i - start));
+
+                        if (response == null) {
+                            throw new SmartStore.SmartStoreException("Bulk operation failed on soup " + soup + " at index " + i);
+                        }
+
+                        chunkResponses.add(response);
+                    }
+                    store.setTransactionSuccessful();
+                } finally {
+                    store.endTransaction();
+                }
+            }
+
+            for (int i = 0; i < chunkResponses.size(); i++) {
+                responses.add(cacheWritten(models.get(start + i), codec.read(chunkResponses.get(i))));
+            }
         }
 
         return responses;
     }
 
+    private interface BulkOperation<T> {
+        JSONObject apply(T model, JSONObject json) throws JSONException;
+    }
+
     public boolean delete(T model) {
         if (model.getSoupEntryId() == -1) {
             return false;
         }
 
         store.delete(soup, model.getSoupEntryId());
+
+        EntityCache<T> cache = getEntityCache();
+        if (cache != null) {
+            cache.invalidate(model);
+        }
+
         return true;
     }
 
@@ -174,20 +313,50 @@ public abstract class Repository<T extends SmartObject> {
         }
 
         store.delete(soup, soupEntryIds);
+
+        EntityCache<T> cache = getEntityCache();
+        if (cache != null) {
+            for (T model : validModels) {
+                cache.invalidate(model);
+            }
+        }
+
         return true;
     }
 
+    /**
+     * Deletes every model matching the conditions straight in the soup, without loading them.
+     *
+     * @return number of deleted models
+     */
+    public int deleteWhere(Condition... conditions) {
+        if (!store.hasSoup(soup)) {
+            return 0;
+        }
+
+        return getSmartSelect()
+                .where(conditions)
+                .delete();
+    }
+
     public T find(String id) {
         if (id == null) {
             return null;
         }
 
-        T model = getSmartSelect()
+        EntityCache<T> cache = getEntityCache();
+        if (cache != null) {
+            T cached = cache.getById(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        SmartSelect<T> select = getSmartSelect()
                 .where(Condition.prop(Constants.ID).eq(id),
-                        Condition.prop(GeneralConstants.IS_DELETED).eq("false"))
-                .first();
+                        Condition.prop(GeneralConstants.IS_DELETED).eq("false"));
 
-        return model;
+        return cache == null ? select.first() : readIntoCache(select, cache, true);
     }
 
     public T findWithDeleteds(String id) {
@@ -195,19 +364,52 @@ public abstract class Repository<T extends SmartObject> {
             return null;
         }
 
-        T model = getSmartSelect()
-                .where(Condition.prop(Constants.ID).eq(id))
-                .first();
+        EntityCache<T> cache = getEntityCache();
+        if (cache != null) {
+            // Models cached by Id were loaded without deleted ones, so they are valid here too
+            T cached = cache.getById(id);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        return model;
+        SmartSelect<T> select = getSmartSelect()
+                .where(Condition.prop(Constants.ID).eq(id));
+
+        return cache == null ? select.first() : readIntoCache(select, cache, false);
     }
 
     public T findByEntryId(long entryId) {
-        T model = getSmartSelect()
-                .where(Condition.prop(SmartObjectConstants.SOUP_ENTRY_ID).eq(entryId))
-                .first();
+        EntityCache<T> cache = getEntityCache();
+        if (cache != null) {
+            T cached = cache.getByEntryId(entryId);
+            if (cached != null) {
+                return cached;
+            }
+        }
 
-        return model;
+        SmartSelect<T> select = getSmartSelect()
+                .where(Condition.prop(SmartObjectConstants.SOUP_ENTRY_ID).eq(entryId));
+
+        return cache == null ? select.first() : readIntoCache(select, cache, false);
+    }
+
+    /**
+     * Reads and caches the model under the database lock, so that no write can evict it
+     * between the read and the put and leave the stale model in the cache.
+     */
+    private T readIntoCache(SmartSelect<T> select, EntityCache<T> cache, boolean byId) {
+        synchronized (store.getDatabase()) {
+            T model = select.first();
+
+            if (byId) {
+                cache.putById(model);
+            } else {
+                cache.putByEntryId(model);
+            }
+
+            return model;
+        }
     }
 
     public List<T> findAll() {
@@ -241,6 +443,25 @@ public abstract class Repository<T extends SmartObject> {
                 .list();
     }
 
+    /**
+     * Keyset paged variant, see {@link SmartSelect#page(String, int)}.
+     *
+     * @param pageToken token of the previous page, null for the first one
+     */
+    public Page<T> findAllOrderByAsc(String fieldName, String pageToken, int pageSize) {
+        return getSmartSelect()
+                .where(Condition.prop(GeneralConstants.IS_DELETED).eq("false"))
+                .orderBy(fieldName)
+                .page(pageToken, pageSize);
+    }
+
+    public Page<T> findAllOrderByDesc(String fieldName, String pageToken, int pageSize) {
+        return getSmartSelect()
+                .where(Condition.prop(GeneralConstants.IS_DELETED).eq("false"))
+                .orderByDesc(fieldName)
+                .page(pageToken, pageSize);
+    }
+
     public List<T> findAllWithDeletedWithLimit(int limit) {
         return getSmartSelect()
                 .limit(String.valueOf(limit))
@@ -270,19 +491,11 @@ public abstract class Repository<T extends SmartObject> {
             return 0;
         }
 
-        String query = "Select" +
-                "               count({" + soup + ":" + SmartObjectConstants.ID + "}) " +
-                "       From " +
-                "               {" + soup + "} " +
-                "       Where " +
-                "               {" + soup + ":" + SmartObjectConstants.LOCAL + "} = 'true'";
-        QuerySpec querySpec = QuerySpec.buildSmartQuerySpec(query, 1);
-
-        JSONArray results;
         int result = 0;
         try {
-            results = store.query(querySpec, 0);
-            result = results.getJSONArray(0).getInt(0);
+            result = getSmartSelect()
+                    .where(Condition.prop(SmartObjectConstants.LOCAL).eq(true))
+                    .count();
         } catch (Exception e) {
             Log.e(Repository.class.getSimpleName(), e.getMessage(), e);
         }
@@ -319,16 +532,14 @@ public abstract class Repository<T extends SmartObject> {
     }
 
     private void getSoup() {
-        if (!typeClass.isAnnotationPresent(SObject.class)) {
+        ModelMetadata metadata = ModelMetadata.of(typeClass);
+
+        if (!metadata.isSObject()) {
             Log.e(SmartObject.class.getSimpleName() + "::GET_SOUP", "SObject annotation missing in model class: " + typeClass.getSimpleName());
             this.soup = "";
             return;
         }
 
-        for (Annotation annotation : typeClass.getAnnotations()) {
-            if (annotation instanceof SObject) {
-                this.soup = ((SObject) annotation).value();
-            }
-        }
+        this.soup = metadata.getSoupName();
     }
 }
@@ -0,0 +1,234 @@
+package com.arcthos.arcthosmart.smartintegration;
+
+import com.arcthos.arcthosmart.annotations.LookUp;
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.*;
+
+public class SyncPlannerTest {
+    private static final Executor INLINE = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void stepsAreOrderedParentsFirst() {
+        SyncPlanner planner = plan(new FakeRunner(), Task.class, Contact.class, Opportunity.class, Account.class);
+
+        List<Class<? extends SmartObject>> order = new ArrayList<>();
+        for (SyncPlanner.Step step : planner.getSteps()) {
+            order.add(step.getModel());
+        }
+
+        assertEquals(Arrays.<Class<? extends SmartObject>>asList(Account.class, Contact.class, Opportunity.class, Task.class), order);
+        assertEquals(Collections.<Class<? extends SmartObject>>singletonList(Contact.class), step(planner, Task.class).getParents());
+    }
+
+    @Test
+    public void childrenStartOnceTheirParentsAreDone() {
+        FakeRunner runner = new FakeRunner();
+        SyncPlanner planner = plan(runner, Account.class, Contact.class, Opportunity.class, Task.class);
+        CountingCallback planCallback = new CountingCallback();
+
+        planner.run(planCallback);
+        assertEquals(Collections.<Class<?>>singletonList(Account.class), runner.started);
+
+        runner.finish(Account.class);
+        assertEquals(Arrays.<Class<?>>asList(Account.class, Contact.class, Opportunity.class), runner.started);
+
+        runner.finish(Opportunity.class);
+        assertEquals(3, runner.started.size());
+
+        runner.finish(Contact.class);
+        assertEquals(Task.class, runner.started.get(3));
+        assertEquals(Contact.class, step(planner, Task.class).getWaitedFor());
+        assertEquals(0, planCallback.count);
+
+        runner.finish(Task.class);
+        assertEquals(1, planCallback.count);
+
+        for (SyncPlanner.Step step : planner.getSteps()) {
+            assertEquals(SyncPlanner.Step.Status.DONE, step.getStatus());
+        }
+    }
+
+    @Test
+    public void failedStepSkipsItsDescendants() {
+        FakeRunner runner = new FakeRunner();
+        runner.failing.add(Contact.class);
+        SyncPlanner planner = plan(runner, Account.class, Contact.class, Opportunity.class, Task.class);
+        CountingCallback planCallback = new CountingCallback();
+
+        planner.run(planCallback);
+        runner.finish(Account.class);
+        runner.finish(Contact.class);
+        runner.finish(Opportunity.class);
+
+        assertEquals(SyncPlanner.Step.Status.DONE, step(planner, Account.class).getStatus());
+        assertEquals(SyncPlanner.Step.Status.FAILED, step(planner, Contact.class).getStatus());
+        assertEquals(SyncPlanner.Step.Status.DONE, step(planner, Opportunity.class).getStatus());
+        assertEquals(SyncPlanner.Step.Status.SKIPPED, step(planner, Task.class).getStatus());
+        assertFalse(runner.started.contains(Task.class));
+        assertEquals(1, planCallback.count);
+    }
+
+    @Test
+    public void runnerExceptionFailsTheStep() {
+        SyncPlanner planner = plan(new SyncPlanner.StepRunner() {
+            @Override
+            public void run(Class<? extends SmartObject> model, SyncCallback syncCallback, ChainedCallback finish) {
+                throw new IllegalStateException("No soup for " + model.getSimpleName());
+            }
+        }, Account.class, Contact.class);
+        CountingCallback planCallback = new CountingCallback();
+
+        planner.run(planCallback);
+
+        assertEquals(SyncPlanner.Step.Status.FAILED, step(planner, Account.class).getStatus());
+        assertEquals(SyncPlanner.Step.Status.SKIPPED, step(planner, Contact.class).getStatus());
+        assertEquals(1, planCallback.count);
+    }
+
+    @Test
+    public void emptyPlanFinishesRightAway() {
+        CountingCallback planCallback = new CountingCallback();
+
+        plan(new FakeRunner()).run(planCallback);
+
+        assertEquals(1, planCallback.count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void cyclicDependencyIsRejected() {
+        plan(new FakeRunner(), Account.class, Parent.class, Child.class);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void planRunsOnce() {
+        SyncPlanner planner = plan(new FakeRunner(), Account.class);
+
+        planner.run(null);
+        planner.run(null);
+    }
+
+    @SafeVarargs
+    private static SyncPlanner plan(SyncPlanner.StepRunner runner, Class<? extends SmartObject>... models) {
+        return new SyncPlanner(Arrays.asList(models), runner, null, INLINE);
+    }
+
+    private static SyncPlanner.Step step(SyncPlanner planner, Class<? extends SmartObject> model) {
+        for (SyncPlanner.Step step : planner.getSteps()) {
+            if (step.getModel() == model) {
+                return step;
+            }
+        }
+
+        throw new AssertionError(model.getSimpleName() + " not in the plan");
+    }
+
+    /**
+     * Keeps the syncs running until the test finishes them, failing those of the failing models.
+     */
+    private static class FakeRunner implements SyncPlanner.StepRunner {
+        private final List<Class<?>> started = new ArrayList<>();
+        private final Set<Class<?>> failing = new HashSet<>();
+        private final Map<Class<?>, SyncCallback> callbacks = new LinkedHashMap<>();
+        private final Map<Class<?>, ChainedCallback> finishes = new LinkedHashMap<>();
+
+        @Override
+        public void run(Class<? extends SmartObject> model, SyncCallback syncCallback, ChainedCallback finish) {
+            started.add(model);
+            callbacks.put(model, syncCallback);
+            finishes.put(model, finish);
+        }
+
+        void finish(Class<?> model) {
+            if (failing.contains(model)) {
+                callbacks.get(model).onDownFailure(null);
+            }
+
+            finishes.get(model).onFinish();
+        }
+    }
+
+    private static class CountingCallback implements ChainedCallback {
+        private int count;
+
+        @Override
+        public void onFinish() {
+            count++;
+        }
+    }
+
+    @SObject("Account")
+    public static class Account extends SmartObject {
+        public Account() {
+            super(Account.class);
+        }
+    }
+
+    @SObject("Contact")
+    public static class Contact extends SmartObject {
+        @LookUp(Account.class)
+        private Account account;
+
+        public Contact() {
+            super(Contact.class);
+        }
+    }
+
+    @SObject("Opportunity")
+    public static class Opportunity extends SmartObject {
+        @LookUp(Account.class)
+        private Account account;
+
+        public Opportunity() {
+            super(Opportunity.class);
+        }
+    }
+
+    @SObject("Task")
+    public static class Task extends SmartObject {
+        @LookUp(Contact.class)
+        private Contact who;
+
+        public Task() {
+            super(Task.class);
+        }
+    }
+
+    @SObject("Parent__c")
+    public static class Parent extends SmartObject {
+        @LookUp(Child.class)
+        private Child child;
+
+        public Parent() {
+            super(Parent.class);
+        }
+    }
+
+    @SObject("Child__c")
+    public static class Child extends SmartObject {
+        @LookUp(Parent.class)
+        private Parent parent;
+
+        public Child() {
+            super(Child.class);
+        }
+    }
+}
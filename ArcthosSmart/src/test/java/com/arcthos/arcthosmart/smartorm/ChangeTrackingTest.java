@@ -0,0 +1,91 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ChangeTrackingTest {
+    private static final String ACCOUNT = "{\"Id\":\"001\",\"Name\":\"Acme\",\"NumberOfEmployees\":10,\"_soupEntryId\":3}";
+
+    @Test
+    public void unchangedModelHasNoChange() throws Exception {
+        TrackedAccount account = ModelCodec.of(TrackedAccount.class).read(ACCOUNT);
+
+        assertEquals(Collections.<String>emptySet(), account.changedSinceLoad());
+    }
+
+    @Test
+    public void changedFieldsAreListedByJsonName() throws Exception {
+        TrackedAccount account = ModelCodec.of(TrackedAccount.class).read(ACCOUNT);
+
+        account.name = "Acme Corp";
+        account.numberOfEmployees = null;
+
+        assertEquals(new HashSet<>(Arrays.asList("Name", "NumberOfEmployees")), account.changedSinceLoad());
+    }
+
+    @Test
+    public void settingTheSameValueIsNoChange() throws Exception {
+        TrackedAccount account = ModelCodec.of(TrackedAccount.class).read(ACCOUNT);
+
+        account.name = new String("Acme");
+        account.numberOfEmployees = 10;
+
+        assertTrue(account.changedSinceLoad().isEmpty());
+    }
+
+    @Test
+    public void everyModelOfAListIsSnapshotted() throws Exception {
+        List<TrackedAccount> accounts = ModelCodec.of(TrackedAccount.class).readList("[" + ACCOUNT + "," + ACCOUNT + "]");
+
+        accounts.get(1).name = "Other";
+
+        assertTrue(accounts.get(0).changedSinceLoad().isEmpty());
+        assertEquals(Collections.singleton("Name"), accounts.get(1).changedSinceLoad());
+    }
+
+    @Test
+    public void modelNotReadFromTheStoreIsNotTracked() {
+        assertNull(new TrackedAccount().changedSinceLoad());
+    }
+
+    @Test
+    public void modelWithoutTrackChangesIsNotTracked() throws Exception {
+        PlainAccount account = ModelCodec.of(PlainAccount.class).read(ACCOUNT);
+
+        account.name = "Acme Corp";
+
+        assertNull(account.changedSinceLoad());
+    }
+
+    @SObject(value = "Account", trackChanges = true)
+    public static class TrackedAccount extends SmartObject {
+        @JsonProperty("Name")
+        private String name;
+
+        @JsonProperty("NumberOfEmployees")
+        private Integer numberOfEmployees;
+
+        public TrackedAccount() {
+            super(TrackedAccount.class);
+        }
+    }
+
+    @SObject("Account")
+    public static class PlainAccount extends SmartObject {
+        @JsonProperty("Name")
+        private String name;
+
+        public PlainAccount() {
+            super(PlainAccount.class);
+        }
+    }
+}
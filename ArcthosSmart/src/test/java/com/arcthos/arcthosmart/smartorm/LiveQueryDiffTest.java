@@ -0,0 +1,47 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LiveQueryDiffTest {
+
+    @Test
+    public void everyRowIsAddedOnTheFirstDelivery() {
+        LiveQuery.Diff diff = LiveQuery.Diff.between(null, versions(1, 10, 2, 20));
+
+        assertEquals(Arrays.asList(1L, 2L), diff.getAdded());
+        assertTrue(diff.getChanged().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void rowsAreComparedByContentHash() {
+        LiveQuery.Diff diff = LiveQuery.Diff.between(versions(1, 10, 2, 20, 3, 30), versions(1, 10, 2, 21, 4, 40));
+
+        assertEquals(Collections.singletonList(4L), diff.getAdded());
+        assertEquals(Collections.singletonList(2L), diff.getChanged());
+        assertEquals(Collections.singletonList(3L), diff.getRemoved());
+        assertFalse(diff.isEmpty());
+    }
+
+    @Test
+    public void reorderedRowsMakeAnEmptyDiff() {
+        LiveQuery.Diff diff = LiveQuery.Diff.between(versions(1, 10, 2, 20), versions(2, 20, 1, 10));
+
+        assertTrue(diff.isEmpty());
+    }
+
+    private static Map<Long, Long> versions(long... entryIdsAndHashes) {
+        Map<Long, Long> versions = new LinkedHashMap<>();
+        for (int i = 0; i < entryIdsAndHashes.length; i += 2) {
+            versions.put(entryIdsAndHashes[i], entryIdsAndHashes[i + 1]);
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,163 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.salesforce.androidsdk.smartstore.store.QuerySpec;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Builds the statements of IN conditions without a store: empty lists must not reach it.
+ */
+public class SmartSelectInTest {
+
+    @Test
+    public void smallListIsBoundInOneStatement() {
+        SmartSelect<Account> select = select().where(Condition.prop("Id").in(Arrays.asList("001A", "001B")));
+
+        List<QuerySpec> querySpecs = select.buildQuerySpecs(select.toSql(), 10);
+
+        assertEquals(1, querySpecs.size());
+        assertTrue(querySpecs.get(0).smartSql.contains("{Account:Id}  IN (?, ?)"));
+        assertArrayEquals(new String[] {"001A", "001B"}, querySpecs.get(0).getArgs());
+    }
+
+    @Test
+    public void largeListIsQueriedInChunks() {
+        List<String> ids = ids(SmartSelect.IN_CHUNK_SIZE * 2 + 200);
+        SmartSelect<Account> select = select()
+                .where(Condition.prop("Name").eq("Acme"))
+                .and(Condition.prop("Id").in(ids))
+                .and(Condition.prop("Type").eq("Customer"));
+
+        List<QuerySpec> querySpecs = select.buildQuerySpecs(select.toSql(), 10);
+
+        assertEquals(3, querySpecs.size());
+        int[] chunkSizes = {SmartSelect.IN_CHUNK_SIZE, SmartSelect.IN_CHUNK_SIZE, 200};
+        int start = 0;
+
+        for (int i = 0; i < querySpecs.size(); i++) {
+            QuerySpec querySpec = querySpecs.get(i);
+            String[] args = querySpec.getArgs();
+
+            assertEquals(chunkSizes[i] + 2, args.length);
+            assertEquals("Acme", args[0]);
+            assertEquals(ids.get(start), args[1]);
+            assertEquals(ids.get(start + chunkSizes[i] - 1), args[chunkSizes[i]]);
+            assertEquals("Customer", args[args.length - 1]);
+            assertEquals(chunkSizes[i] + 2, countPlaceholders(querySpec.smartSql));
+            start += chunkSizes[i];
+        }
+    }
+
+    @Test
+    public void largeNotInIsBoundAsOneJsonArray() {
+        List<String> ids = ids(SmartSelect.IN_CHUNK_SIZE + 1);
+        ids.set(0, "O'Brien \"Jr\"");
+        SmartSelect<Account> select = select()
+                .where(Condition.prop("Id").notIn(ids))
+                .and(Condition.prop("Type").eq("Customer"));
+
+        List<QuerySpec> querySpecs = select.buildQuerySpecs(select.toSql(), 10);
+
+        assertEquals(1, querySpecs.size());
+        assertTrue(querySpecs.get(0).smartSql.contains("NOT IN (SELECT value FROM json_each(?))"));
+        String[] args = querySpecs.get(0).getArgs();
+        assertEquals(2, args.length);
+        assertTrue(args[0].startsWith("[\"O'Brien \\\"Jr\\\"\",\"id1\","));
+        assertEquals("Customer", args[1]);
+    }
+
+    @Test
+    public void secondLargeInBindsNumbersAsNumbers() {
+        List<Long> entryIds = new ArrayList<>();
+        for (long i = 0; i <= SmartSelect.IN_CHUNK_SIZE; i++) {
+            entryIds.add(i);
+        }
+        SmartSelect<Account> select = select()
+                .where(Condition.prop("Id").in(ids(SmartSelect.IN_CHUNK_SIZE + 1)))
+                .and(Condition.prop(SmartObjectConstants.SOUP_ENTRY_ID).in(entryIds));
+
+        List<QuerySpec> querySpecs = select.buildQuerySpecs(select.toSql(), 10);
+
+        assertEquals(2, querySpecs.size());
+        for (QuerySpec querySpec : querySpecs) {
+            String[] args = querySpec.getArgs();
+            assertTrue(querySpec.smartSql.contains("IN (SELECT value FROM json_each(?))"));
+            assertTrue(args[args.length - 1].startsWith("[0,1,2,"));
+        }
+    }
+
+    @Test
+    public void emptyInMatchesNothingWithoutQuerying() {
+        SmartSelect<Account> select = select()
+                .where(Condition.prop("Name").eq("Acme"))
+                .and(Condition.prop("Id").in(Collections.<String>emptyList()));
+
+        assertTrue(select.list().isEmpty());
+        assertTrue(select.rawList().length() == 0);
+        assertNull(select.first());
+        assertFalse(select.iterator().hasNext());
+        assertEquals(0, select.count());
+        assertFalse(select.exists());
+        assertNull(select.sum("AnnualRevenue"));
+        assertEquals(0, select.delete());
+    }
+
+    @Test
+    public void emptyInAndedToARawClauseIsQueried() {
+        SmartSelect<Account> select = select()
+                .where("{Account:Name} = 'Acme' OR {Account:Name} = 'Globex'")
+                .and(Condition.prop("Id").in(Collections.<String>emptyList()));
+
+        assertFalse(select.isEmptyResult());
+        assertTrue(select.toSql().contains("{Account:Id}  IN ()"));
+    }
+
+    @Test
+    public void nullInMatchesNothing() {
+        SmartSelect<Account> select = select().in(null, "Id");
+
+        assertEquals(0, select.count());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void deleteRejectsALimitOverChunks() {
+        select().where(Condition.prop("Id").in(ids(SmartSelect.IN_CHUNK_SIZE + 1))).limit("10").delete();
+    }
+
+    private static SmartSelect<Account> select() {
+        return SmartSelect.from(null, Account.class);
+    }
+
+    private static List<String> ids(int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add("id" + i);
+        }
+        return ids;
+    }
+
+    private static int countPlaceholders(String sql) {
+        int count = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            if (sql.charAt(i) == '?') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @SObject("Account")
+    public static class Account extends SmartObject {
+        public Account() {
+            super(Account.class);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SmartSelectPageTest {
+    private static final String ORDER = "{Account:Name}";
+    private static final String ENTRY_ID = "{Account:_soupEntryId}";
+
+    @Test
+    public void withoutOrderSeeksOnSoupEntryId() {
+        List<Object> args = new ArrayList<>();
+
+        assertEquals(ENTRY_ID + " > ?", seek(null, false, null, 42, args));
+        assertEquals(Arrays.<Object>asList(42L), args);
+
+        args.clear();
+        assertEquals(ENTRY_ID + " < ?", seek(null, true, null, 42, args));
+    }
+
+    @Test
+    public void nullValueSeeksWithinNullsThenValuesInAscendingOrder() {
+        List<Object> args = new ArrayList<>();
+
+        assertEquals("(" + ORDER + " IS NULL AND " + ENTRY_ID + " > ?) OR " + ORDER + " IS NOT NULL",
+                seek(ORDER, false, null, 7, args));
+        assertEquals(Arrays.<Object>asList(7L), args);
+    }
+
+    @Test
+    public void nullValueOnlySeeksWithinNullsInDescendingOrder() {
+        List<Object> args = new ArrayList<>();
+
+        assertEquals("(" + ORDER + " IS NULL AND " + ENTRY_ID + " < ?)", seek(ORDER, true, null, 7, args));
+    }
+
+    @Test
+    public void textValueIsBoundAsIs() {
+        List<Object> args = new ArrayList<>();
+
+        assertEquals(ORDER + " > ? OR (" + ORDER + " = ? AND " + ENTRY_ID + " > ?)", seek(ORDER, false, "Acme", 7, args));
+        assertEquals(Arrays.<Object>asList("Acme", "Acme", 7L), args);
+    }
+
+    @Test
+    public void numbersAreCastBackFromText() {
+        List<Object> args = new ArrayList<>();
+
+        assertEquals(ORDER + " > CAST(? AS INTEGER) OR (" + ORDER + " = CAST(? AS INTEGER) AND " + ENTRY_ID + " > ?)",
+                seek(ORDER, false, 10L, 7, args));
+        assertEquals(Arrays.<Object>asList(10L, 10L, 7L), args);
+
+        args.clear();
+        assertEquals(ORDER + " < CAST(? AS REAL) OR (" + ORDER + " = CAST(? AS REAL) AND " + ENTRY_ID + " < ?) OR " + ORDER + " IS NULL",
+                seek(ORDER, true, 2.5, 7, args));
+        assertEquals(Arrays.<Object>asList(2.5, 2.5, 7L), args);
+    }
+
+    @Test
+    public void pageKeyValueKeepsTheRowType() {
+        assertEquals(10L, SmartSelect.PageKey.valueOf(LongNode.valueOf(10)));
+        assertEquals(2.5, SmartSelect.PageKey.valueOf(DoubleNode.valueOf(2.5)));
+        assertEquals("10", SmartSelect.PageKey.valueOf(TextNode.valueOf("10")));
+        assertNull(SmartSelect.PageKey.valueOf(NullNode.getInstance()));
+        assertNull(SmartSelect.PageKey.valueOf(null));
+    }
+
+    private static String seek(String orderColumn, boolean descending, Object value, long soupEntryId, List<Object> args) {
+        return SmartSelect.seekPredicate(orderColumn, ENTRY_ID, descending, new SmartSelect.PageKey(value, soupEntryId), args);
+    }
+}
@@ -0,0 +1,94 @@
+package com.arcthos.arcthosmart.smartorm;
+
+import com.arcthos.arcthosmart.annotations.Index;
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.arcthos.arcthosmart.smartorm.repository.Repository;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SmartSelectProjectionTest {
+    private static final String PROJECTED_ROW = "{\"_soupEntryId\":3,\"Id\":\"001\",\"Name\":\"Acme\"}";
+
+    @Test
+    public void indexedFieldsAreSelectedAsColumns() {
+        SmartSelect<Account> select = SmartSelect.from(null, Account.class)
+                .select(SmartStore.SOUP_ENTRY_ID, "Id", "Name");
+
+        assertTrue(select.toSql().startsWith("SELECT {Account:_soupEntryId}, {Account:Id}, {Account:Name} FROM {Account}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fieldsOutsideTheIndexesAreRejected() {
+        SmartSelect.from(null, Account.class).select("Name", "Site");
+    }
+
+    @Test
+    public void noFieldSelectsTheSoup() {
+        SmartSelect<Account> select = SmartSelect.from(null, Account.class).select();
+
+        assertTrue(select.toSql().startsWith("SELECT {Account:_soup} FROM {Account}"));
+    }
+
+    @Test
+    public void projectedModelIsPartial() throws Exception {
+        Account account = ModelCodec.of(Account.class).readPartial(ModelCodec.getMapper().readTree(PROJECTED_ROW));
+
+        assertTrue(account.isPartial());
+        assertEquals(3, account.getSoupEntryId());
+        assertNull(ModelCodec.of(ChangeTrackingTest.TrackedAccount.class)
+                .readPartial(ModelCodec.getMapper().readTree(PROJECTED_ROW)).changedSinceLoad());
+        assertFalse(ModelCodec.of(Account.class).read(PROJECTED_ROW).isPartial());
+    }
+
+    @Test
+    public void projectedModelIsNeverSaved() throws Exception {
+        // Refused before the store is used
+        Repository<Account> repository = new Repository<Account>(null, Account.class) {
+        };
+        Account account = ModelCodec.of(Account.class).readPartial(ModelCodec.getMapper().readTree(PROJECTED_ROW));
+
+        try {
+            repository.update(account);
+            fail("A partial model must not be updated");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            repository.updateAll(Collections.singletonList(account));
+            fail("A partial model must not be updated");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            repository.upsert(account);
+            fail("A partial model must not be upserted");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            repository.upsertAll(Collections.singletonList(account));
+            fail("A partial model must not be upserted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @SObject("Account")
+    public static class Account extends SmartObject {
+        @Index
+        @JsonProperty("Name")
+        private String name;
+
+        @JsonProperty("Site")
+        private String site;
+
+        public Account() {
+            super(Account.class);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.arcthos.arcthosmart.smartorm.async;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Callbacks are posted to the main looper, which never runs in unit tests: results are read from the futures.
+ */
+public class DatabaseExecutorTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final DatabaseExecutor executor = new DatabaseExecutor(1, 4);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void readsWithTheSameKeyShareOneRun() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        DatabaseFuture<String> first = executor.read("accounts", blocking(started, runs, "result"), null);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        DatabaseFuture<String> second = executor.read("accounts", blocking(null, runs, "other"), null);
+
+        assertEquals(1, executor.getInFlightReadCount());
+        release.countDown();
+
+        assertEquals("result", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("result", second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+    }
+
+    @Test
+    public void readsWithoutKeyNeverCoalesce() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        release.countDown();
+
+        DatabaseFuture<String> first = executor.read(null, blocking(null, runs, "first"), null);
+        DatabaseFuture<String> second = executor.read(null, blocking(null, runs, "second"), null);
+
+        assertEquals("first", first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("second", second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+        assertEquals(0, executor.getInFlightReadCount());
+    }
+
+    @Test
+    public void completedReadIsRunAgain() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        release.countDown();
+
+        assertEquals("first", executor.read("accounts", blocking(null, runs, "first"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("second", executor.read("accounts", blocking(null, runs, "second"), null).get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, runs.get());
+    }
+
+    @Test
+    public void cancellingOneCallerKeepsTheSharedRun() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        DatabaseFuture<String> first = executor.read("accounts", blocking(started, runs, "result"), null);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        DatabaseFuture<String> second = executor.read("accounts", blocking(null, runs, "other"), null);
+
+        assertTrue(first.cancel(false));
+        assertTrue(first.isCancelled());
+        assertFalse(second.isDone());
+        release.countDown();
+
+        assertEquals("result", second.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        try {
+            first.get();
+            fail("A cancelled caller must not get the result");
+        } catch (CancellationException expected) {
+        }
+    }
+
+    @Test
+    public void cancellingEveryCallerCancelsTheQueuedRun() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger blockerRuns = new AtomicInteger();
+        AtomicInteger runs = new AtomicInteger();
+
+        DatabaseFuture<String> blocker = executor.read(null, blocking(started, blockerRuns, "blocker"), null);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        DatabaseFuture<String> first = executor.read("accounts", blocking(null, runs, "result"), null);
+        DatabaseFuture<String> second = executor.read("accounts", blocking(null, runs, "result"), null);
+        assertEquals(1, executor.getReadQueueSize());
+
+        first.cancel(false);
+        assertEquals(1, executor.getInFlightReadCount());
+        second.cancel(false);
+        assertEquals(0, executor.getInFlightReadCount());
+
+        release.countDown();
+        assertEquals("blocker", blocker.get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("after", executor.read(null, blocking(null, new AtomicInteger(), "after"), null)
+                .get(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void writesRunInSubmissionOrder() throws Exception {
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        List<DatabaseFuture<Integer>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            final int index = i;
+            futures.add(executor.write(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    order.add(index);
+                    return index;
+                }
+            }, null));
+        }
+
+        for (DatabaseFuture<Integer> future : futures) {
+            future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), order);
+    }
+
+    @Test
+    public void fullQueueFailsTheRead() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        executor.read(null, blocking(started, runs, "blocker"), null);
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            executor.read(null, blocking(null, runs, "queued"), null);
+        }
+
+        DatabaseFuture<String> rejected = executor.read("accounts", blocking(null, runs, "rejected"), null);
+
+        assertTrue(rejected.isDone());
+        assertEquals(0, executor.getInFlightReadCount());
+        try {
+            rejected.get();
+            fail("A read over the queue capacity must fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    /**
+     * @param started counted down once the call runs, null when not needed
+     */
+    private Callable<String> blocking(final CountDownLatch started, final AtomicInteger runs, final String result) {
+        return new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                runs.incrementAndGet();
+                if (started != null) {
+                    started.countDown();
+                }
+
+                release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                return result;
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.arcthos.arcthosmart.smartorm.cache;
+
+import com.arcthos.arcthosmart.annotations.SObject;
+import com.arcthos.arcthosmart.smartorm.SmartObject;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EntityCacheTest {
+
+    @Test
+    public void cachedByIdIsReachableByEntryId() {
+        EntityCache<Account> cache = new EntityCache<>("Account", 10);
+        Account account = account(1, "001A");
+
+        cache.putById(account);
+
+        assertSame(account, cache.getById("001A"));
+        assertSame(account, cache.getByEntryId(1));
+        assertNull(cache.getById("001B"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void unsavedModelsAreNotCached() {
+        EntityCache<Account> cache = new EntityCache<>("Account", 10);
+
+        cache.putById(account(-1, "001A"));
+        cache.putByEntryId(account(-1, null));
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        EntityCache<Account> cache = new EntityCache<>("Account", 2);
+        Account first = account(1, "001A");
+        Account second = account(2, "001B");
+        Account third = account(3, "001C");
+
+        cache.putById(first);
+        cache.putById(second);
+        cache.getByEntryId(1);
+        cache.putById(third);
+
+        assertEquals(2, cache.size());
+        assertSame(first, cache.getById("001A"));
+        assertNull(cache.getById("001B"));
+        assertNull(cache.getByEntryId(2));
+        assertSame(third, cache.getById("001C"));
+    }
+
+    @Test
+    public void cachingByEntryIdKeepsTheIdOfTheSameModel() {
+        EntityCache<Account> cache = new EntityCache<>("Account", 10);
+        Account account = account(1, "001A");
+
+        cache.putById(account);
+        cache.putByEntryId(account);
+
+        assertSame(account, cache.getById("001A"));
+    }
+
+    @Test
+    public void replacingAnEntryDropsItsPreviousId() {
+        EntityCache<Account> cache = new EntityCache<>("Account", 10);
+        Account local = account(1, "local-id");
+        Account synced = account(1, "001A");
+
+        cache.putById(local);
+        cache.putById(synced);
+
+        assertNull(cache.getById("local-id"));
+        assertSame(synced, cache.getById("001A"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void invalidationDropsBothKeys() {
+        EntityCache<Account> cache = new EntityCache<>("Account", 10);
+        Account first = account(1, "001A");
+        Account second = account(2, "001B");
+        cache.putById(first);
+        cache.putById(second);
+
+        cache.invalidate(new Long[] {1L});
+
+        assertNull(cache.getById("001A"));
+        assertSame(second, cache.getById("001B"));
+
+        cache.invalidate(second);
+        assertNull(cache.getByEntryId(2));
+
+        cache.putById(first);
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertNull(cache.getById("001A"));
+    }
+
+    private static Account account(long soupEntryId, String id) {
+        Account account = new Account();
+        account.setSoupEntryId(soupEntryId);
+        account.setId(id);
+        return account;
+    }
+
+    @SObject("Account")
+    public static class Account extends SmartObject {
+        public Account() {
+            super(Account.class);
+        }
+    }
+}
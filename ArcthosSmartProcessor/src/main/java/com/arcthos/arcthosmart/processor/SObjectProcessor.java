@@ -0,0 +1,493 @@
+package com.arcthos.arcthosmart.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * Generates a {@code <Model>_ModelDescriptor} for every @SObject model and an index of all of them,
+ * so ArcthosSmart does not need to find them by reflection at runtime.
+ *
+ * Annotations are matched by name since ArcthosSmart is an Android library this module cannot depend on.
+ * Apply it only to the application module, the index class is unique per application.
+ */
+public class SObjectProcessor extends AbstractProcessor {
+    private static final String ANNOTATIONS_PACKAGE = "com.arcthos.arcthosmart.annotations.";
+    private static final String SOBJECT = ANNOTATIONS_PACKAGE + "SObject";
+    private static final String IGNORE = ANNOTATIONS_PACKAGE + "Ignore";
+    private static final String IGNORE_ON_UPDATE = ANNOTATIONS_PACKAGE + "IgnoreOnUpdate";
+    private static final String INDEX = ANNOTATIONS_PACKAGE + "Index";
+    private static final String LOOK_UP = ANNOTATIONS_PACKAGE + "LookUp";
+    private static final String SOQL_WHERE = ANNOTATIONS_PACKAGE + "SoqlWhere";
+    private static final String SYNC = ANNOTATIONS_PACKAGE + "Sync";
+    private static final String SOURCE_LOCAL_PARENT = ANNOTATIONS_PACKAGE + "SourceLocalParent";
+    private static final String DESTINATION_LOCAL_PARENT = ANNOTATIONS_PACKAGE + "DestinationLocalParent";
+    private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+
+    private static final String SMART_OBJECT = "com.arcthos.arcthosmart.smartorm.SmartObject";
+    private static final String MODEL_DESCRIPTOR = "com.arcthos.arcthosmart.smartorm.ModelDescriptor";
+    private static final String MODEL_INDEX = "com.arcthos.arcthosmart.smartorm.ModelIndex";
+    private static final String SMART_STORE_TYPE = "com.salesforce.androidsdk.smartstore.store.SmartStore.Type";
+    // Same as ModelMetadata: indexed even without @Index since the framework and MobileSync query them
+    private static final Set<String> FRAMEWORK_INDEXES = new HashSet<>(Arrays.asList(
+            "Id", "LastModifiedDate", "__local__", "__locally_created__", "__locally_updated__", "__locally_deleted__", "IsDeleted"));
+    private static final String DESCRIPTOR_SUFFIX = "_ModelDescriptor";
+    private static final String INDEX_PACKAGE = "com.arcthos.arcthosmart.generated";
+    private static final String INDEX_CLASS = "ArcthosModelIndex";
+
+    private final Map<String, ScannedModel> scannedModels = new HashMap<>();
+    private final Set<String> scanning = new HashSet<>();
+    private final Map<String, TypeElement> indexedModels = new LinkedHashMap<>();
+    private boolean indexWritten;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(SOBJECT);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement sObject = processingEnv.getElementUtils().getTypeElement(SOBJECT);
+        if (sObject == null || roundEnv.processingOver()) {
+            return false;
+        }
+
+        Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(sObject);
+
+        // Written once the models stop coming, before the last round so the index gets compiled normally
+        if (elements.isEmpty() && !indexedModels.isEmpty() && !indexWritten) {
+            writeIndex();
+            indexWritten = true;
+            return false;
+        }
+
+        for (Element element : elements) {
+            if (element.getKind() != ElementKind.CLASS) {
+                continue;
+            }
+
+            TypeElement model = (TypeElement) element;
+
+            if (indexWritten) {
+                error(model, "@SObject model generated after " + INDEX_CLASS + " was written");
+                continue;
+            }
+
+            ScannedModel scannedModel = scan(model);
+
+            if (scannedModel != null) {
+                writeDescriptor(scannedModel);
+                indexedModels.put(model.getQualifiedName().toString(), model);
+            }
+        }
+
+        return false;
+    }
+
+    private ScannedModel scan(TypeElement model) {
+        String name = model.getQualifiedName().toString();
+        ScannedModel scannedModel = scannedModels.get(name);
+        if (scannedModel != null) {
+            return scannedModel;
+        }
+
+        if (!scanning.add(name)) {
+            error(model, "Cyclic @LookUp reaching " + name);
+            return null;
+        }
+
+        AnnotationMirror sObject = getAnnotation(model, SOBJECT);
+        scannedModel = new ScannedModel(model, sObject == null ? null : (String) getValue(sObject, "value"));
+        scannedModel.trackingChanges = sObject != null && (Boolean) getValue(sObject, "trackChanges");
+
+        for (VariableElement field : getScannedFields(model)) {
+            String fieldName = field.getSimpleName().toString();
+            String jsonName = getJsonName(field);
+            scannedModel.jsonNameByField.put(fieldName, jsonName);
+
+            if (hasAnnotation(field, IGNORE) || hasAnnotation(field, SOQL_WHERE)) {
+                continue;
+            }
+
+            AnnotationMirror index = getAnnotation(field, INDEX);
+            if (index != null || FRAMEWORK_INDEXES.contains(jsonName)) {
+                scannedModel.indexTypes.put(jsonName, getIndexType(field, index));
+            }
+
+            AnnotationMirror lookUp = getAnnotation(field, LOOK_UP);
+            if (lookUp != null) {
+                TypeElement lookUpModel = asTypeElement(getValue(lookUp, "value"));
+                ScannedModel related = lookUpModel == null ? null : scan(lookUpModel);
+
+                if (related != null) {
+                    scannedModel.lookUps.put(jsonName, lookUpModel);
+                    for (String relatedField : related.fieldsToSyncDown) {
+                        scannedModel.fieldsToSyncDown.add(jsonName + "." + relatedField);
+                    }
+                }
+                continue;
+            }
+
+            AnnotationMirror sync = getAnnotation(field, SYNC);
+            boolean up = sync == null || (Boolean) getValue(sync, "up");
+            boolean down = sync == null || (Boolean) getValue(sync, "down");
+
+            if (up) {
+                scannedModel.fieldsToSyncUp.add(jsonName);
+
+                if (!hasAnnotation(field, IGNORE_ON_UPDATE)) {
+                    scannedModel.fieldsToSyncUpForUpdate.add(jsonName);
+                }
+            }
+
+            if (down) {
+                scannedModel.fieldsToSyncDown.add(jsonName);
+            }
+        }
+
+        scanLocalParents(model, scannedModel);
+
+        scanning.remove(name);
+        scannedModels.put(name, scannedModel);
+        return scannedModel;
+    }
+
+    private void scanLocalParents(TypeElement model, ScannedModel scannedModel) {
+        List<VariableElement> sourceFields = new ArrayList<>();
+        List<VariableElement> destinationFields = new ArrayList<>();
+
+        for (VariableElement field : ElementFilter.fieldsIn(model.getEnclosedElements())) {
+            if (hasAnnotation(field, SOQL_WHERE)) {
+                scannedModel.soqlWhereField = field.getSimpleName().toString();
+            }
+
+            if (hasAnnotation(field, SOURCE_LOCAL_PARENT)) {
+                sourceFields.add(field);
+            }
+
+            if (hasAnnotation(field, DESTINATION_LOCAL_PARENT)) {
+                destinationFields.add(field);
+            }
+        }
+
+        for (VariableElement source : sourceFields) {
+            TypeElement sourceClass = asTypeElement(getValue(getAnnotation(source, SOURCE_LOCAL_PARENT), "value"));
+
+            for (VariableElement destination : destinationFields) {
+                TypeElement destinationClass = asTypeElement(getValue(getAnnotation(destination, DESTINATION_LOCAL_PARENT), "value"));
+                AnnotationMirror jsonProperty = getAnnotation(destination, JSON_PROPERTY);
+                String fieldName = jsonProperty == null ? "" : (String) getValue(jsonProperty, "value");
+
+                if (sourceClass != null && sourceClass.equals(destinationClass) && !fieldName.equals("")) {
+                    scannedModel.destinationBySource.put(source.getSimpleName().toString(), fieldName);
+                    scannedModel.sourceClassBySource.put(source.getSimpleName().toString(), sourceClass);
+                    break;
+                }
+            }
+        }
+    }
+
+    private List<VariableElement> getScannedFields(TypeElement model) {
+        List<VariableElement> fields = new ArrayList<>();
+
+        TypeMirror superclass = model.getSuperclass();
+        if (superclass.getKind() == TypeKind.DECLARED) {
+            fields.addAll(ElementFilter.fieldsIn(((DeclaredType) superclass).asElement().getEnclosedElements()));
+        }
+        fields.addAll(ElementFilter.fieldsIn(model.getEnclosedElements()));
+
+        return fields;
+    }
+
+    private String getIndexType(VariableElement field, AnnotationMirror index) {
+        if (index != null && (Boolean) getValue(index, "fullText")) {
+            return "full_text";
+        }
+
+        String type = index == null ? "AUTO" : ((VariableElement) getValue(index, "type")).getSimpleName().toString();
+
+        switch (type) {
+            case "STRING":
+                return "string";
+            case "INTEGER":
+                return "integer";
+            case "FLOATING":
+                return "floating";
+            case "JSON1":
+                return "json1";
+            default:
+                return inferIndexType(field.asType());
+        }
+    }
+
+    private String inferIndexType(TypeMirror fieldType) {
+        switch (fieldType.getKind()) {
+            case INT:
+            case LONG:
+            case SHORT:
+            case BYTE:
+                return "integer";
+            case FLOAT:
+            case DOUBLE:
+                return "floating";
+            case BOOLEAN:
+            case CHAR:
+                return "string";
+            case DECLARED:
+                break;
+            default:
+                return "json1";
+        }
+
+        TypeElement typeElement = (TypeElement) ((DeclaredType) fieldType).asElement();
+        if (typeElement.getKind() == ElementKind.ENUM) {
+            return "string";
+        }
+
+        switch (typeElement.getQualifiedName().toString()) {
+            case "java.lang.Integer":
+            case "java.lang.Long":
+            case "java.lang.Short":
+            case "java.lang.Byte":
+                return "integer";
+            case "java.lang.Float":
+            case "java.lang.Double":
+                return "floating";
+            case "java.lang.Boolean":
+            case "java.lang.String":
+            case "java.lang.Character":
+                return "string";
+            default:
+                return "json1";
+        }
+    }
+
+    private String getJsonName(VariableElement field) {
+        AnnotationMirror jsonProperty = getAnnotation(field, JSON_PROPERTY);
+        return jsonProperty == null ? field.getSimpleName().toString() : (String) getValue(jsonProperty, "value");
+    }
+
+    private boolean hasAnnotation(Element element, String annotationName) {
+        return getAnnotation(element, annotationName) != null;
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement) mirror.getAnnotationType().asElement();
+            if (annotation.getQualifiedName().contentEquals(annotationName)) {
+                return mirror;
+            }
+        }
+
+        return null;
+    }
+
+    private Object getValue(AnnotationMirror mirror, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+
+        return null;
+    }
+
+    private TypeElement asTypeElement(Object value) {
+        if (value instanceof DeclaredType) {
+            return (TypeElement) ((DeclaredType) value).asElement();
+        }
+
+        return null;
+    }
+
+    private void writeDescriptor(ScannedModel model) {
+        String packageName = getPackageName(model.element);
+        String binaryName = processingEnv.getElementUtils().getBinaryName(model.element).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1)).replace('$', '_');
+        String descriptorName = simpleName + DESCRIPTOR_SUFFIX;
+        String modelClass = model.element.getQualifiedName() + ".class";
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * Generated by ArcthosSmartProcessor from {@link ")
+                .append(model.element.getQualifiedName()).append("}, do not edit.\n */\n");
+        source.append("public final class ").append(descriptorName).append(" implements ").append(MODEL_DESCRIPTOR).append(" {\n");
+
+        StringBuilder staticInit = new StringBuilder();
+        appendConstant(source, "java.util.List<String>", "FIELDS_TO_SYNC_UP", stringList(model.fieldsToSyncUp));
+        appendConstant(source, "java.util.List<String>", "FIELDS_TO_SYNC_UP_FOR_UPDATE", stringList(model.fieldsToSyncUpForUpdate));
+        appendConstant(source, "java.util.List<String>", "FIELDS_TO_SYNC_DOWN", stringList(model.fieldsToSyncDown));
+        appendMap(source, staticInit, "String", "JSON_NAME_BY_FIELD", literals(model.jsonNameByField));
+        appendMap(source, staticInit, SMART_STORE_TYPE, "INDEX_TYPES", typeConstants(model.indexTypes));
+        appendMap(source, staticInit, "Class<? extends " + SMART_OBJECT + ">", "LOOK_UPS", classLiterals(model.lookUps));
+        appendMap(source, staticInit, "String", "DESTINATION_BY_SOURCE", literals(model.destinationBySource));
+        appendMap(source, staticInit, "Class<? extends " + SMART_OBJECT + ">", "SOURCE_CLASS_BY_SOURCE", classLiterals(model.sourceClassBySource));
+        source.append(staticInit).append("\n");
+
+        appendGetter(source, "Class<? extends " + SMART_OBJECT + ">", "getModelClass", modelClass);
+        appendGetter(source, "String", "getSoupName", literal(model.soupName));
+        appendGetter(source, "boolean", "isTrackingChanges", String.valueOf(model.trackingChanges));
+        appendGetter(source, "java.util.Map<String, String>", "getJsonNameByField", "JSON_NAME_BY_FIELD");
+        appendGetter(source, "java.util.Map<String, " + SMART_STORE_TYPE + ">", "getIndexTypes", "INDEX_TYPES");
+        appendGetter(source, "java.util.List<String>", "getFieldsToSyncUp", "FIELDS_TO_SYNC_UP");
+        appendGetter(source, "java.util.List<String>", "getFieldsToSyncUpForUpdate", "FIELDS_TO_SYNC_UP_FOR_UPDATE");
+        appendGetter(source, "java.util.List<String>", "getFieldsToSyncDown", "FIELDS_TO_SYNC_DOWN");
+        appendGetter(source, "java.util.Map<String, Class<? extends " + SMART_OBJECT + ">>", "getLookUps", "LOOK_UPS");
+        appendGetter(source, "String", "getSoqlWhereField", literal(model.soqlWhereField));
+        appendGetter(source, "java.util.Map<String, String>", "getDestinationBySource", "DESTINATION_BY_SOURCE");
+        appendGetter(source, "java.util.Map<String, Class<? extends " + SMART_OBJECT + ">>", "getSourceClassBySource", "SOURCE_CLASS_BY_SOURCE");
+        source.setLength(source.length() - 1);
+        source.append("}\n");
+
+        String qualifiedName = packageName.isEmpty() ? descriptorName : packageName + "." + descriptorName;
+        writeSource(qualifiedName, source.toString(), model.element);
+    }
+
+    private void writeIndex() {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(INDEX_PACKAGE).append(";\n\n");
+        source.append("/**\n * Generated by ArcthosSmartProcessor, do not edit.\n */\n");
+        source.append("public final class ").append(INDEX_CLASS).append(" implements ").append(MODEL_INDEX).append(" {\n");
+        source.append("    private static final java.util.List<Class<? extends ").append(SMART_OBJECT).append(">> MODELS;\n\n");
+        source.append("    static {\n");
+        source.append("        java.util.List<Class<? extends ").append(SMART_OBJECT).append(">> models = new java.util.ArrayList<>();\n");
+        for (TypeElement model : indexedModels.values()) {
+            source.append("        models.add(").append(model.getQualifiedName()).append(".class);\n");
+        }
+        source.append("        MODELS = java.util.Collections.unmodifiableList(models);\n");
+        source.append("    }\n\n");
+        appendGetter(source, "java.util.List<Class<? extends " + SMART_OBJECT + ">>", "getModels", "MODELS");
+        source.setLength(source.length() - 1);
+        source.append("}\n");
+
+        writeSource(INDEX_PACKAGE + "." + INDEX_CLASS, source.toString(),
+                indexedModels.values().toArray(new Element[indexedModels.size()]));
+    }
+
+    private void appendConstant(StringBuilder source, String type, String name, String value) {
+        source.append("    private static final ").append(type).append(" ").append(name).append(" = ").append(value).append(";\n");
+    }
+
+    private void appendGetter(StringBuilder source, String type, String name, String value) {
+        source.append("    @Override\n");
+        source.append("    public ").append(type).append(" ").append(name).append("() {\n");
+        source.append("        return ").append(value).append(";\n");
+        source.append("    }\n\n");
+    }
+
+    private String stringList(List<String> values) {
+        StringBuilder list = new StringBuilder("java.util.Collections.unmodifiableList(java.util.Arrays.<String>asList(");
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                list.append(", ");
+            }
+            list.append(literal(values.get(i)));
+        }
+        return list.append("))").toString();
+    }
+
+    private void appendMap(StringBuilder source, StringBuilder staticInit, String valueType, String name, Map<String, String> entries) {
+        String type = "java.util.Map<String, " + valueType + ">";
+
+        source.append("    private static final ").append(type).append(" ").append(name).append(";\n");
+
+        staticInit.append("\n    static {\n");
+        staticInit.append("        ").append(type).append(" map = new java.util.LinkedHashMap<>();\n");
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            staticInit.append("        map.put(").append(literal(entry.getKey())).append(", ").append(entry.getValue()).append(");\n");
+        }
+        staticInit.append("        ").append(name).append(" = java.util.Collections.unmodifiableMap(map);\n");
+        staticInit.append("    }\n");
+    }
+
+    private Map<String, String> literals(Map<String, String> values) {
+        Map<String, String> literals = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            literals.put(entry.getKey(), literal(entry.getValue()));
+        }
+        return literals;
+    }
+
+    private Map<String, String> typeConstants(Map<String, String> values) {
+        Map<String, String> constants = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            constants.put(entry.getKey(), SMART_STORE_TYPE + "." + entry.getValue());
+        }
+        return constants;
+    }
+
+    private Map<String, String> classLiterals(Map<String, TypeElement> values) {
+        Map<String, String> literals = new LinkedHashMap<>();
+        for (Map.Entry<String, TypeElement> entry : values.entrySet()) {
+            literals.put(entry.getKey(), entry.getValue().getQualifiedName() + ".class");
+        }
+        return literals;
+    }
+
+    private String literal(String value) {
+        if (value == null) {
+            return "null";
+        }
+
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private String getPackageName(TypeElement element) {
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(element);
+        return packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+    }
+
+    private void writeSource(String qualifiedName, String source, Element... originatingElements) {
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, originatingElements);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(originatingElements.length > 0 ? originatingElements[0] : null, "Could not write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,31 @@
+package com.arcthos.arcthosmart.processor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.lang.model.element.TypeElement;
+
+/**
+ * Annotation data of one @SObject model, mirroring what ModelMetadata reads by reflection at runtime.
+ */
+class ScannedModel {
+    final TypeElement element;
+    final String soupName;
+    final Map<String, String> jsonNameByField = new LinkedHashMap<>();
+    final Map<String, String> indexTypes = new LinkedHashMap<>();
+    final List<String> fieldsToSyncUp = new ArrayList<>();
+    final List<String> fieldsToSyncUpForUpdate = new ArrayList<>();
+    final List<String> fieldsToSyncDown = new ArrayList<>();
+    final Map<String, TypeElement> lookUps = new LinkedHashMap<>();
+    final Map<String, String> destinationBySource = new LinkedHashMap<>();
+    final Map<String, TypeElement> sourceClassBySource = new LinkedHashMap<>();
+    String soqlWhereField;
+    boolean trackingChanges;
+
+    ScannedModel(TypeElement element, String soupName) {
+        this.element = element;
+        this.soupName = soupName;
+    }
+}
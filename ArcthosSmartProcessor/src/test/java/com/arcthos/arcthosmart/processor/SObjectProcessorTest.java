@@ -0,0 +1,273 @@
+package com.arcthos.arcthosmart.processor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs SObjectProcessor on models written against stubs of the ArcthosSmart, SmartStore and Jackson types
+ * it matches by name, and checks the generated sources.
+ */
+public class SObjectProcessorTest {
+    private static final String TYPE = "com.salesforce.androidsdk.smartstore.store.SmartStore.Type.";
+
+    private static final List<JavaFileObject> STUBS = Arrays.asList(
+            source("com.arcthos.arcthosmart.annotations.SObject",
+                    "public @interface SObject { String value(); boolean trackChanges() default false; }"),
+            source("com.arcthos.arcthosmart.annotations.IndexType",
+                    "public enum IndexType { AUTO, STRING, INTEGER, FLOATING, JSON1 }"),
+            source("com.arcthos.arcthosmart.annotations.Index",
+                    "public @interface Index { IndexType type() default IndexType.AUTO; boolean fullText() default false; }"),
+            source("com.arcthos.arcthosmart.annotations.Sync",
+                    "public @interface Sync { boolean up() default true; boolean down() default true; }"),
+            source("com.arcthos.arcthosmart.annotations.LookUp",
+                    "public @interface LookUp { Class<? extends com.arcthos.arcthosmart.smartorm.SmartObject> value(); }"),
+            source("com.arcthos.arcthosmart.annotations.SourceLocalParent",
+                    "public @interface SourceLocalParent { Class<? extends com.arcthos.arcthosmart.smartorm.SmartObject> value(); }"),
+            source("com.arcthos.arcthosmart.annotations.DestinationLocalParent",
+                    "public @interface DestinationLocalParent { Class<? extends com.arcthos.arcthosmart.smartorm.SmartObject> value(); }"),
+            source("com.arcthos.arcthosmart.annotations.Ignore", "public @interface Ignore {}"),
+            source("com.arcthos.arcthosmart.annotations.IgnoreOnUpdate", "public @interface IgnoreOnUpdate {}"),
+            source("com.arcthos.arcthosmart.annotations.SoqlWhere", "public @interface SoqlWhere {}"),
+            source("com.fasterxml.jackson.annotation.JsonProperty", "public @interface JsonProperty { String value() default \"\"; }"),
+            source("com.salesforce.androidsdk.smartstore.store.SmartStore",
+                    "public class SmartStore { public enum Type { string, integer, floating, full_text, json1 } }"),
+            source("com.arcthos.arcthosmart.smartorm.ModelDescriptor", "public interface ModelDescriptor {}"),
+            source("com.arcthos.arcthosmart.smartorm.ModelIndex", "public interface ModelIndex {}"),
+            source("com.arcthos.arcthosmart.smartorm.SmartObject",
+                    "import com.arcthos.arcthosmart.annotations.*;",
+                    "import com.fasterxml.jackson.annotation.JsonProperty;",
+                    "public abstract class SmartObject {",
+                    "    @Sync(up = false) @JsonProperty(\"Id\") protected String id;",
+                    "    @Sync(up = false) @JsonProperty(\"LastModifiedDate\") protected String lastModifiedDate;",
+                    "    @Sync(up = false, down = false) @JsonProperty(\"__local__\") protected boolean local;",
+                    "    @Ignore @Sync(up = false, down = false) @JsonProperty(\"_soupEntryId\") protected long soupEntryId;",
+                    "}"));
+
+    @Test
+    public void descriptorListsIndexesAndSyncedFields() {
+        Compilation compilation = compile(source("com.example.Account",
+                "import com.arcthos.arcthosmart.annotations.*;",
+                "import com.fasterxml.jackson.annotation.JsonProperty;",
+                "@SObject(value = \"Account\", trackChanges = true)",
+                "public class Account extends com.arcthos.arcthosmart.smartorm.SmartObject {",
+                "    @JsonProperty(\"Name\") @Index private String name;",
+                "    @JsonProperty(\"NumberOfEmployees\") @Index private Integer employees;",
+                "    @JsonProperty(\"AnnualRevenue\") @Index private double revenue;",
+                "    @JsonProperty(\"Description\") @Index(fullText = true) private String description;",
+                "    @JsonProperty(\"Rating\") @Index(type = IndexType.STRING) private int rating;",
+                "    @JsonProperty(\"Tags\") @Index private java.util.List<String> tags;",
+                "    @JsonProperty(\"Site\") private String site;",
+                "    @JsonProperty(\"OwnerId\") @IgnoreOnUpdate private String ownerId;",
+                "    @JsonProperty(\"CreatedDate\") @Sync(up = false) private String createdDate;",
+                "    @Ignore private String transientValue;",
+                "}"));
+
+        compilation.assertSucceeded();
+        String descriptor = compilation.generated("com.example.Account_ModelDescriptor");
+
+        assertTrue(descriptor.contains("map.put(\"Id\", " + TYPE + "string);"));
+        assertTrue(descriptor.contains("map.put(\"LastModifiedDate\", " + TYPE + "string);"));
+        assertTrue(descriptor.contains("map.put(\"__local__\", " + TYPE + "string);"));
+        assertTrue(descriptor.contains("map.put(\"Name\", " + TYPE + "string);"));
+        assertTrue(descriptor.contains("map.put(\"NumberOfEmployees\", " + TYPE + "integer);"));
+        assertTrue(descriptor.contains("map.put(\"AnnualRevenue\", " + TYPE + "floating);"));
+        assertTrue(descriptor.contains("map.put(\"Description\", " + TYPE + "full_text);"));
+        assertTrue(descriptor.contains("map.put(\"Rating\", " + TYPE + "string);"));
+        assertTrue(descriptor.contains("map.put(\"Tags\", " + TYPE + "json1);"));
+        assertFalse(descriptor.contains("map.put(\"Site\", " + TYPE));
+        assertFalse(descriptor.contains("map.put(\"_soupEntryId\", " + TYPE));
+
+        assertTrue(descriptor.contains("FIELDS_TO_SYNC_UP = java.util.Collections.unmodifiableList(java.util.Arrays.<String>asList("
+                + "\"Name\", \"NumberOfEmployees\", \"AnnualRevenue\", \"Description\", \"Rating\", \"Tags\", \"Site\", \"OwnerId\"));"));
+        assertTrue(descriptor.contains("FIELDS_TO_SYNC_UP_FOR_UPDATE = java.util.Collections.unmodifiableList(java.util.Arrays.<String>asList("
+                + "\"Name\", \"NumberOfEmployees\", \"AnnualRevenue\", \"Description\", \"Rating\", \"Tags\", \"Site\"));"));
+        assertTrue(descriptor.contains("FIELDS_TO_SYNC_DOWN = java.util.Collections.unmodifiableList(java.util.Arrays.<String>asList("
+                + "\"Id\", \"LastModifiedDate\", \"Name\", \"NumberOfEmployees\", \"AnnualRevenue\", \"Description\", \"Rating\", \"Tags\", "
+                + "\"Site\", \"OwnerId\", \"CreatedDate\"));"));
+
+        assertTrue(descriptor.contains("map.put(\"transientValue\", \"transientValue\");"));
+        assertTrue(descriptor.contains("return \"Account\";"));
+        assertTrue(descriptor.contains("return true;"));
+    }
+
+    @Test
+    public void lookUpsExpandToTheRelatedFieldsToSyncDown() {
+        Compilation compilation = compile(
+                source("com.example.Owner",
+                        "import com.arcthos.arcthosmart.annotations.*;",
+                        "import com.fasterxml.jackson.annotation.JsonProperty;",
+                        "@SObject(\"User\")",
+                        "public class Owner extends com.arcthos.arcthosmart.smartorm.SmartObject {",
+                        "    @JsonProperty(\"Name\") private String name;",
+                        "}"),
+                source("com.example.Contact",
+                        "import com.arcthos.arcthosmart.annotations.*;",
+                        "import com.fasterxml.jackson.annotation.JsonProperty;",
+                        "@SObject(\"Contact\")",
+                        "public class Contact extends com.arcthos.arcthosmart.smartorm.SmartObject {",
+                        "    @JsonProperty(\"Owner\") @LookUp(Owner.class) private Owner owner;",
+                        "}"));
+
+        compilation.assertSucceeded();
+        String descriptor = compilation.generated("com.example.Contact_ModelDescriptor");
+
+        assertTrue(descriptor.contains("FIELDS_TO_SYNC_DOWN = java.util.Collections.unmodifiableList(java.util.Arrays.<String>asList("
+                + "\"Id\", \"LastModifiedDate\", \"Owner.Id\", \"Owner.LastModifiedDate\", \"Owner.Name\"));"));
+        assertTrue(descriptor.contains("FIELDS_TO_SYNC_UP = java.util.Collections.unmodifiableList(java.util.Arrays.<String>asList());"));
+        assertTrue(descriptor.contains("map.put(\"Owner\", com.example.Owner.class);"));
+    }
+
+    @Test
+    public void indexListsEveryModel() {
+        Compilation compilation = compile(
+                source("com.example.Account",
+                        "@com.arcthos.arcthosmart.annotations.SObject(\"Account\")",
+                        "public class Account extends com.arcthos.arcthosmart.smartorm.SmartObject {}"),
+                source("com.example.Contact",
+                        "@com.arcthos.arcthosmart.annotations.SObject(\"Contact\")",
+                        "public class Contact extends com.arcthos.arcthosmart.smartorm.SmartObject {}"));
+
+        compilation.assertSucceeded();
+        String index = compilation.generated("com.arcthos.arcthosmart.generated.ArcthosModelIndex");
+
+        assertTrue(index.contains("models.add(com.example.Account.class);"));
+        assertTrue(index.contains("models.add(com.example.Contact.class);"));
+    }
+
+    @Test
+    public void cyclicLookUpIsAnError() {
+        Compilation compilation = compile(
+                source("com.example.Parent",
+                        "import com.arcthos.arcthosmart.annotations.*;",
+                        "@SObject(\"Parent__c\")",
+                        "public class Parent extends com.arcthos.arcthosmart.smartorm.SmartObject {",
+                        "    @LookUp(Child.class) private Child child;",
+                        "}"),
+                source("com.example.Child",
+                        "import com.arcthos.arcthosmart.annotations.*;",
+                        "@SObject(\"Child__c\")",
+                        "public class Child extends com.arcthos.arcthosmart.smartorm.SmartObject {",
+                        "    @LookUp(Parent.class) private Parent parent;",
+                        "}"));
+
+        assertTrue(compilation.errors.toString(), compilation.hasError("Cyclic @LookUp reaching com.example."));
+    }
+
+    private static Compilation compile(JavaFileObject... models) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        final Map<String, StringWriter> generated = new HashMap<String, StringWriter>();
+
+        StandardJavaFileManager standardFileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        JavaFileManager fileManager = new ForwardingJavaFileManager<StandardJavaFileManager>(standardFileManager) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, final String className, JavaFileObject.Kind kind, FileObject sibling) {
+                final StringWriter writer = new StringWriter();
+                generated.put(className, writer);
+
+                // Read back by javac in the next round
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public Writer openWriter() {
+                        return writer;
+                    }
+
+                    @Override
+                    public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                        return writer.toString();
+                    }
+
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return new ByteArrayOutputStream();
+                    }
+                };
+            }
+        };
+
+        List<JavaFileObject> sources = new ArrayList<JavaFileObject>(STUBS);
+        sources.addAll(Arrays.asList(models));
+
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, Arrays.asList("-proc:only"), null, sources);
+        task.setProcessors(Collections.singletonList(new SObjectProcessor()));
+        task.call();
+
+        List<String> errors = new ArrayList<String>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errors.add(diagnostic.getMessage(null));
+            }
+        }
+
+        return new Compilation(generated, errors);
+    }
+
+    private static JavaFileObject source(String qualifiedName, String... lines) {
+        int lastDot = qualifiedName.lastIndexOf('.');
+        StringBuilder content = new StringBuilder("package ").append(qualifiedName.substring(0, lastDot)).append(";\n");
+        for (String line : lines) {
+            content.append(line).append('\n');
+        }
+
+        final String code = content.toString();
+        return new SimpleJavaFileObject(URI.create("mem:///" + qualifiedName.replace('.', '/') + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static class Compilation {
+        private final Map<String, StringWriter> generated;
+        private final List<String> errors;
+
+        Compilation(Map<String, StringWriter> generated, List<String> errors) {
+            this.generated = generated;
+            this.errors = errors;
+        }
+
+        void assertSucceeded() {
+            assertTrue(errors.toString(), errors.isEmpty());
+        }
+
+        String generated(String className) {
+            StringWriter source = generated.get(className);
+            assertNotNull(className + " was not generated, got " + generated.keySet(), source);
+            return source.toString();
+        }
+
+        boolean hasError(String prefix) {
+            for (String error : errors) {
+                if (error.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -29,6 +29,7 @@ package com.salesforce.androidsdk.mobilesync.manager;
 
 import com.salesforce.androidsdk.mobilesync.target.SyncDownTarget;
 import com.salesforce.androidsdk.mobilesync.util.SyncState;
+import com.salesforce.androidsdk.smartstore.store.SmartStore;
 import com.salesforce.androidsdk.util.JSONObjectHelper;
 
 import org.json.JSONArray;
@@ -72,14 +73,9 @@ public class SyncDownTask extends SyncTask {
             JSONArray recordsToSave = idsToSkip == null ? records : removeWithIds(records, idsToSkip, idField);
 
             // Save to smartstore.
-            target.saveRecordsToLocalStore(syncManager, soupName, recordsToSave, sync.getId());
-            countSaved += records.length();
             maxTimeStamp = Math.max(maxTimeStamp, target.getLatestModificationTimeStamp(records));
-
-            // Updating maxTimeStamp as we go if records are ordered by latest modification
-            if (target.isSyncDownSortedByLatestModification()) {
-                sync.setMaxTimeStamp(maxTimeStamp);
-            }
+            saveRecords(target, soupName, recordsToSave, maxTimeStamp);
+            countSaved += records.length();
 
             // Update sync status.
             if (countSaved < totalSize) {
@@ -96,6 +92,38 @@ public class SyncDownTask extends SyncTask {
         }
     }
 
+    /**
+     * Save records to smartstore
+     * Records ordered by latest modification are saved in the same transaction as the new maxTimeStamp,
+     * so that a resync after a failure neither refetches nor skips any of them
+     */
+    private void saveRecords(SyncDownTarget target, String soupName, JSONArray records, long maxTimeStamp) throws JSONException {
+        if (!target.isSyncDownSortedByLatestModification()) {
+            target.saveRecordsToLocalStore(syncManager, soupName, records, sync.getId());
+            return;
+        }
+
+        SmartStore smartStore = syncManager.getSmartStore();
+        long previousMaxTimeStamp = sync.getMaxTimeStamp();
+        boolean saved = false;
+
+        synchronized (smartStore.getDatabase()) {
+            smartStore.beginTransaction();
+            try {
+                target.saveRecordsToLocalStore(syncManager, soupName, records, sync.getId());
+                sync.setMaxTimeStamp(maxTimeStamp);
+                sync.save(smartStore);
+                smartStore.setTransactionSuccessful();
+                saved = true;
+            } finally {
+                smartStore.endTransaction();
+                if (!saved) {
+                    sync.setMaxTimeStamp(previousMaxTimeStamp);
+                }
+            }
+        }
+    }
+
     private JSONArray removeWithIds(JSONArray records, Set<String> idsToSkip, String idField) throws JSONException {
         JSONArray arr = new JSONArray();
         for (int i = 0; i < records.length(); i++) {
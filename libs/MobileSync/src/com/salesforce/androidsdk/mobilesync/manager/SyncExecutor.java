@@ -0,0 +1,140 @@
+package com.salesforce.androidsdk.mobilesync.manager;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor running the tasks of a sync manager
+ * Tasks on different soups run concurrently, up to the max concurrent syncs
+ * Tasks on the same soup run one at a time, in submission order
+ * (e.g. a sync down started from the callback of a sync up runs after it)
+ */
+public class SyncExecutor {
+
+    public static final int DEFAULT_MAX_CONCURRENT_SYNCS = 4;
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final ThreadPoolExecutor threadPool;
+
+    // Tasks waiting for the running task of their soup, by soup
+    // A soup is in the map as long as one of its tasks is queued or running
+    private final Map<String, Queue<Runnable>> waitingBySoup = new HashMap<>();
+    private int waitingCount;
+
+    public SyncExecutor(int maxConcurrentSyncs) {
+        checkMaxConcurrentSyncs(maxConcurrentSyncs);
+        threadPool = new ThreadPoolExecutor(maxConcurrentSyncs, maxConcurrentSyncs, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>());
+        threadPool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Run task once the previous tasks of its soup are done
+     *
+     * @param soupName
+     * @param task
+     */
+    public synchronized void execute(String soupName, Runnable task) {
+        Queue<Runnable> waiting = waitingBySoup.get(soupName);
+        if (waiting != null) {
+            waiting.add(task);
+            waitingCount++;
+            return;
+        }
+
+        waitingBySoup.put(soupName, new ArrayDeque<Runnable>());
+        try {
+            submit(soupName, task);
+        } catch (RejectedExecutionException e) {
+            waitingBySoup.remove(soupName);
+            throw e;
+        }
+    }
+
+    /**
+     * Change the number of tasks running at the same time
+     *
+     * @param maxConcurrentSyncs
+     */
+    public synchronized void setMaxConcurrentSyncs(int maxConcurrentSyncs) {
+        checkMaxConcurrentSyncs(maxConcurrentSyncs);
+        if (maxConcurrentSyncs > threadPool.getMaximumPoolSize()) {
+            threadPool.setMaximumPoolSize(maxConcurrentSyncs);
+            threadPool.setCorePoolSize(maxConcurrentSyncs);
+        } else {
+            threadPool.setCorePoolSize(maxConcurrentSyncs);
+            threadPool.setMaximumPoolSize(maxConcurrentSyncs);
+        }
+    }
+
+    public synchronized int getMaxConcurrentSyncs() {
+        return threadPool.getMaximumPoolSize();
+    }
+
+    /**
+     * @return number of tasks submitted but not running yet
+     */
+    public synchronized int getQueueDepth() {
+        return waitingCount + threadPool.getQueue().size();
+    }
+
+    /**
+     * @return approximate number of tasks running
+     */
+    public int getActiveCount() {
+        return threadPool.getActiveCount();
+    }
+
+    /**
+     * Drop waiting tasks and interrupt running ones
+     */
+    public synchronized void shutdownNow() {
+        waitingBySoup.clear();
+        waitingCount = 0;
+        threadPool.shutdownNow();
+    }
+
+    private void submit(final String soupName, final Runnable task) {
+        threadPool.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    runNext(soupName);
+                }
+            }
+        });
+    }
+
+    private synchronized void runNext(String soupName) {
+        Queue<Runnable> waiting = waitingBySoup.get(soupName);
+        Runnable next = waiting == null ? null : waiting.poll();
+        if (next == null) {
+            waitingBySoup.remove(soupName);
+            return;
+        }
+
+        waitingCount--;
+        try {
+            submit(soupName, next);
+        } catch (RejectedExecutionException e) {
+            // Shut down while running
+            waitingCount -= waiting.size();
+            waitingBySoup.remove(soupName);
+        }
+    }
+
+    private static void checkMaxConcurrentSyncs(int maxConcurrentSyncs) {
+        if (maxConcurrentSyncs < 1) {
+            throw new IllegalArgumentException("Max concurrent syncs must be greater than zero");
+        }
+    }
+}
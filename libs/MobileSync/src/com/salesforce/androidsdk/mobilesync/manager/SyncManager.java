@@ -52,8 +52,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * Sync Manager
@@ -75,8 +73,8 @@ public class SyncManager {
     // Sync manager state
     private State state;
 
-    // Thread pool for running syncs
-    private final ExecutorService threadPool = Executors.newFixedThreadPool(1);
+    // Executor for running syncs, concurrent across soups and serial within a soup
+    private final SyncExecutor syncExecutor = new SyncExecutor(SyncExecutor.DEFAULT_MAX_CONCURRENT_SYNCS);
 
     // Backing smartstore
     private SmartStore smartStore;
@@ -175,7 +173,7 @@ public class SyncManager {
     public static synchronized void reset() {
         for (SyncManager syncManager : INSTANCES.values()) {
             syncManager.stop();
-            syncManager.threadPool.shutdownNow();
+            syncManager.syncExecutor.shutdownNow();
         }
         INSTANCES.clear();
     }
@@ -193,7 +191,7 @@ public class SyncManager {
                     keysToRemove.add(key);
                     SyncManager syncManager = INSTANCES.get(key);
                     syncManager.stop();
-                    syncManager.threadPool.shutdownNow();
+                    syncManager.syncExecutor.shutdownNow();
                 }
             }
             // NB: keySet returns a Set view of the keys contained in this map.
@@ -454,7 +452,7 @@ public class SyncManager {
                 break;
         }
 
-        threadPool.execute(syncTask);
+        syncExecutor.execute(sync.getSoupName(), syncTask);
     }
 
     /**
@@ -553,7 +551,14 @@ public class SyncManager {
 
         // Ask target to clean up ghosts
         MobileSyncLogger.d(TAG, "cleanResyncGhosts called", sync);
-        threadPool.execute(new CleanSyncGhostsTask(this, sync, callback));
+        syncExecutor.execute(sync.getSoupName(), new CleanSyncGhostsTask(this, sync, callback));
+    }
+
+    /**
+     * @return executor running the syncs, to tune the number of concurrent syncs or monitor its load
+     */
+    public SyncExecutor getSyncExecutor() {
+        return syncExecutor;
     }
 
     /**
@@ -0,0 +1,155 @@
+package com.salesforce.androidsdk.mobilesync.manager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for SyncExecutor
+ */
+public class SyncExecutorTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private SyncExecutor executor;
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSameSoupRunsOneAtATimeInOrder() throws InterruptedException {
+        executor = new SyncExecutor(4);
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(20);
+
+        for (int i = 0; i < 20; i++) {
+            final int index = i;
+            executor.execute("accounts", new Runnable() {
+                @Override
+                public void run() {
+                    int current = running.incrementAndGet();
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                    sleep(2);
+                    order.add(index);
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue("Tasks did not finish", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("Tasks of a soup ran concurrently", 1, maxRunning.get());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertEquals("Wrong order", i, (int) order.get(i));
+        }
+    }
+
+    @Test
+    public void testDifferentSoupsRunConcurrently() throws InterruptedException {
+        executor = new SyncExecutor(2);
+        final CyclicBarrier bothRunning = new CyclicBarrier(2);
+        final CountDownLatch met = new CountDownLatch(2);
+
+        for (String soupName : new String[] {"accounts", "contacts"}) {
+            executor.execute(soupName, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        bothRunning.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                        met.countDown();
+                    } catch (Exception e) {
+                        // Left at its count, fails the test
+                    }
+                }
+            });
+        }
+
+        Assert.assertTrue("Tasks of different soups did not run concurrently", met.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMaxConcurrentSyncs() throws InterruptedException {
+        executor = new SyncExecutor(2);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(5);
+
+        for (int i = 0; i < 4; i++) {
+            executor.execute("soup" + i, blocking(started, release, done));
+        }
+        executor.execute("soup0", blocking(started, release, done));
+
+        Assert.assertTrue("Tasks did not start", started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        sleep(50);
+        Assert.assertEquals("Wrong active count", 2, executor.getActiveCount());
+        Assert.assertEquals("Wrong queue depth", 3, executor.getQueueDepth());
+
+        executor.setMaxConcurrentSyncs(3);
+        Assert.assertEquals("Wrong max concurrent syncs", 3, executor.getMaxConcurrentSyncs());
+
+        release.countDown();
+        Assert.assertTrue("Tasks did not finish", done.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        Assert.assertEquals("Wrong queue depth", 0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void testShutdownNowDropsWaitingTasks() throws InterruptedException {
+        executor = new SyncExecutor(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(3);
+
+        executor.execute("accounts", blocking(started, release, done));
+        executor.execute("accounts", blocking(started, release, done));
+        executor.execute("contacts", blocking(started, release, done));
+        Assert.assertTrue("Task did not start", started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+
+        Assert.assertEquals("Wrong queue depth", 0, executor.getQueueDepth());
+        Assert.assertFalse("Waiting tasks ran after shutdown", done.await(200, TimeUnit.MILLISECONDS));
+        Assert.assertEquals("Waiting tasks ran after shutdown", 2, done.getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConcurrentSyncs() {
+        new SyncExecutor(0);
+    }
+
+    private static Runnable blocking(final CountDownLatch started, final CountDownLatch release, final CountDownLatch done) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    // Interrupted by shutdownNow
+                }
+                done.countDown();
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -53,6 +53,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * SmartStore Database Helper
@@ -62,6 +63,8 @@ import java.util.Map.Entry;
  */
 public class DBHelper {
 
+	private static final String TAG = "DBHelper";
+
 	// Explain suuport
 	public static final String EXPLAIN_SQL = "sql";
 	public static final String EXPLAIN_ARGS = "args";
@@ -132,6 +135,16 @@ public class DBHelper {
 		}
 	};
 
+	// Cache of smart sql to converted sql
+	private LruCache<String, String> smartSqlToSqlMap = new LruCache<String, String>(CACHES_COUNT_LIMIT);
+
+	// Listeners notified of soup writes
+	private List<SmartStore.SoupChangeListener> soupChangeListeners = new CopyOnWriteArrayList<SmartStore.SoupChangeListener>();
+
+	// Version of each written soup, from a counter shared by all soups so a dropped soup never gets a version back
+	private final Map<String, Long> soupVersions = new HashMap<String, Long>();
+	private long lastSoupVersion;
+
 	// Boolean to turn explain query plan capture on or off
 	private boolean captureExplainQueryPlan;
 
@@ -213,6 +226,7 @@ public class DBHelper {
 			
 			cleanupRawCountSqlToStatementMaps(tableName);
 		}
+		cleanupSmartSqlToSqlMap(soupName);
 		soupNameToTableNamesMap.remove(soupName);
 		soupNameToIndexSpecsMap.remove(soupName);
 		soupNameToHasFTS.remove(soupName);
@@ -235,6 +249,82 @@ public class DBHelper {
 		}
 	}
 
+	private void cleanupSmartSqlToSqlMap(String soupName) {
+		String soupReference = "{" + soupName + "}";
+		String soupPathReference = "{" + soupName + ":";
+		for (String smartSql : smartSqlToSqlMap.snapshot().keySet()) {
+			if (smartSql.contains(soupReference) || smartSql.contains(soupPathReference)) {
+				smartSqlToSqlMap.remove(smartSql);
+			}
+		}
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void addSoupChangeListener(SmartStore.SoupChangeListener listener) {
+		if (!soupChangeListeners.contains(listener)) {
+			soupChangeListeners.add(listener);
+		}
+	}
+
+	/**
+	 * @param listener
+	 */
+	public void removeSoupChangeListener(SmartStore.SoupChangeListener listener) {
+		soupChangeListeners.remove(listener);
+	}
+
+	/**
+	 * Notify soup change listeners, a failing listener does not prevent the others from being notified
+	 * @param soupName
+	 * @param soupEntryIds
+	 */
+	public void notifySoupChanged(String soupName, Long[] soupEntryIds) {
+		bumpSoupVersion(soupName);
+		for (SmartStore.SoupChangeListener listener : soupChangeListeners) {
+			try {
+				listener.onSoupChanged(soupName, soupEntryIds);
+			} catch (RuntimeException e) {
+				SmartStoreLogger.e(TAG, "Soup change listener failed for soup: " + soupName, e);
+			}
+		}
+	}
+
+	/**
+	 * @param soupName
+	 * @return version of the soup, greater after every write to it, 0 if it was never written
+	 */
+	public long getSoupVersion(String soupName) {
+		synchronized (soupVersions) {
+			Long version = soupVersions.get(soupName);
+			return version == null ? 0 : version;
+		}
+	}
+
+	private void bumpSoupVersion(String soupName) {
+		synchronized (soupVersions) {
+			soupVersions.put(soupName, ++lastSoupVersion);
+		}
+	}
+
+	/**
+	 * @param smartSql
+	 * @return cached conversion of smartSql or null
+	 */
+	public String getCachedConvertedSql(String smartSql) {
+		return smartSqlToSqlMap.get(smartSql);
+	}
+
+	/**
+	 * Cache conversion of smart sql
+	 * @param smartSql
+	 * @param sql
+	 */
+	public void cacheConvertedSql(String smartSql, String sql) {
+		smartSqlToSqlMap.put(smartSql, sql);
+	}
+
 	/**
 	 * Get next id for a table
 	 * 
@@ -459,6 +549,7 @@ public class DBHelper {
 		tableNameToInsertHelpersMap.evictAll();
 		tableNameToNextIdStatementsMap.evictAll();
 		rawCountSqlToStatementsMap.evictAll();
+		smartSqlToSqlMap.evictAll();
 	}
 
     /**
@@ -89,6 +89,9 @@ public class QuerySpec {
     // Like
     public final String likeKey;
 
+    // Bind arguments for smart query
+    private final String[] smartSqlArgs;
+
     // Private constructor for soup query spec
     private QuerySpec(String soupName, String[] selectPaths, QueryType queryType, String matchKey, String beginKey, String endKey, String likeKey, String orderPath, Order order, int pageSize, String path) {
     	this.soupName = soupName;
@@ -102,14 +105,16 @@ public class QuerySpec {
         this.orderPath = orderPath;
         this.order = order;
         this.pageSize = pageSize;
+        this.smartSqlArgs = null;
         this.smartSql = computeSmartSql();
         this.countSmartSql = computeCountSmartSql();
         this.idsSmartSql = computeIdsSmartSql();
     }
 
     // Private constructor for smart query spec
-    private QuerySpec(String smartSql, int pageSize) {
+    private QuerySpec(String smartSql, int pageSize, String[] smartSqlArgs) {
     	this.smartSql = smartSql;
+        this.smartSqlArgs = smartSqlArgs;
         this.countSmartSql = computeCountSmartSql(smartSql);
         this.idsSmartSql = computeIdsSmartSql(smartSql);
     	this.pageSize = pageSize;
@@ -277,7 +282,20 @@ public class QuerySpec {
      * @return
      */
     public static QuerySpec buildSmartQuerySpec(String smartSql, int pageSize) {
-    	return new QuerySpec(smartSql, pageSize);
+    	return new QuerySpec(smartSql, pageSize, null);
+    }
+
+    /**
+     * Return a query spec for a smart query with bound arguments
+     * Using ? placeholders keeps the smart sql constant for a given query shape,
+     * so its conversion and compiled statement can be reused across calls
+     * @param smartSql
+     * @param pageSize
+     * @param args values bound to the ? placeholders of smartSql, in order
+     * @return
+     */
+    public static QuerySpec buildSmartQuerySpec(String smartSql, int pageSize, String[] args) {
+        return new QuerySpec(smartSql, pageSize, args != null && args.length > 0 ? args : null);
     }
 
     /**
@@ -478,7 +496,7 @@ public class QuerySpec {
         case match:
             return null; // baking matchKey into query
         case smart:
-        	return null;
+        	return smartSqlArgs;
         default:
             throw new SmartStoreException("Fell through switch: " + queryType);
         }
@@ -80,6 +80,12 @@ public class SmartSqlHelper  {
 	 */
 	public String convertSmartSql(SQLiteDatabase db, String smartSql) {
 
+		// Same smart sql (e.g. a query using ? placeholders) converts to the same sql
+		String cachedSql = DBHelper.getInstance(db).getCachedConvertedSql(smartSql);
+		if (cachedSql != null) {
+			return cachedSql;
+		}
+
 		// Select's only
 		String smartSqlLowerCase = smartSql.toLowerCase(Locale.getDefault()).trim();
 		if (smartSqlLowerCase.startsWith("insert") || smartSqlLowerCase.startsWith("update") || smartSqlLowerCase.startsWith("delete")) {
@@ -147,6 +153,8 @@ public class SmartSqlHelper  {
         // Instead we should have json_extract(TABLE_x.soup, ...)
 		sqlStr = sqlStr.replaceAll("([^ ]+)\\.json_extract\\(soup", "json_extract($1.soup");
 
+		DBHelper.getInstance(db).cacheConvertedSql(smartSql, sqlStr);
+
 		// Done
 		return sqlStr;
 	}
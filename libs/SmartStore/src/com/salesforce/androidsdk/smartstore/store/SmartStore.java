@@ -48,6 +48,8 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
@@ -71,6 +73,9 @@ public class SmartStore  {
 	// Fts table suffix
 	public static final String FTS_SUFFIX = "_fts";
 
+	// Max soup entry ids per delete statement in deleteByQuery
+	private static final int DELETE_CHUNK_SIZE = 500;
+
 	// Table to keep track of soup's index specs
     public static final String SOUP_INDEX_MAP_TABLE = "soup_index_map";
 
@@ -243,6 +248,42 @@ public class SmartStore  {
 		return DBHelper.getInstance(getDatabase()).getLastExplainQueryPlan();
 	}
 
+	/**
+	 * Register a listener notified of every write to the soups of this store's database
+	 * Listeners are shared by all SmartStore instances opened on the same database
+	 * @param listener
+	 */
+	public void registerSoupChangeListener(SoupChangeListener listener) {
+		DBHelper.getInstance(getDatabase()).addSoupChangeListener(listener);
+	}
+
+	/**
+	 * Unregister a listener previously passed to registerSoupChangeListener
+	 * @param listener
+	 */
+	public void unregisterSoupChangeListener(SoupChangeListener listener) {
+		DBHelper.getInstance(getDatabase()).removeSoupChangeListener(listener);
+	}
+
+	/**
+	 * Version of a soup, increased by every write to it (including clear and drop) before listeners are notified
+	 * Versions are kept in memory and only compare within the lifetime of the database
+	 * @param soupName
+	 * @return current version of the soup
+	 */
+	public long getSoupVersion(String soupName) {
+		return DBHelper.getInstance(getDatabase()).getSoupVersion(soupName);
+	}
+
+	/**
+	 * Notify soup change listeners
+	 * @param soupName
+	 * @param soupEntryIds ids of the changed entries or null if any entry may have changed
+	 */
+	private void notifySoupChanged(String soupName, Long[] soupEntryIds) {
+		DBHelper.getInstance(getDatabase()).notifySoupChanged(soupName, soupEntryIds);
+	}
+
 	/**
      * Get database size
      */
@@ -684,6 +725,7 @@ public class SmartStore  {
 				db.setTransactionSuccessful();
 				db.endTransaction();
 			}
+			notifySoupChanged(soupName, null);
     	}
 	}
 
@@ -731,6 +773,7 @@ public class SmartStore  {
 	            } finally {
 	                db.endTransaction();
 	            }
+	            notifySoupChanged(soupName, null);
 	        }
     	}
     }
@@ -1088,6 +1131,7 @@ public class SmartStore  {
 	                if (handleTx) {
 	                    db.setTransactionSuccessful();
 	                }
+	                notifySoupChanged(soupName, new Long[] { soupEntryId });
 	                return soupElt;
 	            } else {
 	                return null;
@@ -1127,6 +1171,36 @@ public class SmartStore  {
 		}
 	}
 
+	/**
+	 * @param indexSpecs
+	 * @param changedPaths
+	 * @return index specs whose path starts with one of the changed top level fields
+	 */
+	private IndexSpec[] getChangedIndexSpecs(IndexSpec[] indexSpecs, Collection<String> changedPaths) {
+		List<IndexSpec> changedIndexSpecs = new ArrayList<IndexSpec>();
+		for (IndexSpec indexSpec : indexSpecs) {
+			int dot = indexSpec.path.indexOf('.');
+			if (changedPaths.contains(dot == -1 ? indexSpec.path : indexSpec.path.substring(0, dot))) {
+				changedIndexSpecs.add(indexSpec);
+			}
+		}
+		return changedIndexSpecs.toArray(new IndexSpec[0]);
+	}
+
+	/**
+	 * @param indexSpecs
+	 * @param typeGroup
+	 * @return true if at least one of the index specs is in typeGroup
+	 */
+	private boolean hasIndexSpecIn(IndexSpec[] indexSpecs, TypeGroup typeGroup) {
+		for (IndexSpec indexSpec : indexSpecs) {
+			if (typeGroup.isMember(indexSpec.type)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
     /**
      * @param soupElt
      * @param contentValues
@@ -1226,6 +1300,21 @@ public class SmartStore  {
      * @throws JSONException
      */
     public JSONObject update(String soupName, JSONObject soupElt, long soupEntryId, boolean handleTx) throws JSONException {
+		return update(soupName, soupElt, soupEntryId, null, handleTx);
+	}
+
+    /**
+     * Update only reprojecting the indexes of the changed fields, the other index columns keep their value
+     * Note: Passed soupElt is modified (last modified date and soup entry id fields)
+     * @param soupName
+     * @param soupElt
+     * @param soupEntryId
+     * @param changedPaths top level fields changed since soupElt was retrieved or null to reproject every index
+	 * @param handleTx
+     * @return
+     * @throws JSONException
+     */
+    public JSONObject update(String soupName, JSONObject soupElt, long soupEntryId, Collection<String> changedPaths, boolean handleTx) throws JSONException {
     	final SQLiteDatabase db = getDatabase();
     	synchronized(db) {
 			try {
@@ -1236,6 +1325,9 @@ public class SmartStore  {
 				String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 				if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
 				IndexSpec[] indexSpecs = DBHelper.getInstance(db).getIndexSpecs(db, soupName);
+				if (changedPaths != null) {
+					indexSpecs = getChangedIndexSpecs(indexSpecs, changedPaths);
+				}
 
 				long now = System.currentTimeMillis();
 
@@ -1256,7 +1348,7 @@ public class SmartStore  {
 				boolean success = DBHelper.getInstance(db).update(db, soupTableName, contentValues, ID_PREDICATE, soupEntryId + "") == 1;
 
 				// Fts
-				if (success && hasFTS(soupName)) {
+				if (success && hasFTS(soupName) && hasIndexSpecIn(indexSpecs, TypeGroup.value_extracted_to_fts_column)) {
 					String soupTableNameFts = soupTableName + FTS_SUFFIX;
 					ContentValues contentValuesFts = new ContentValues();
 					projectIndexedPaths(soupElt, contentValuesFts, indexSpecs, TypeGroup.value_extracted_to_fts_column);
@@ -1272,6 +1364,7 @@ public class SmartStore  {
 					if (handleTx) {
 						db.setTransactionSuccessful();
 					}
+					notifySoupChanged(soupName, new Long[] { soupEntryId });
 					return soupElt;
 				} else {
 					return null;
@@ -1430,6 +1523,7 @@ public class SmartStore  {
 	                db.endTransaction();
 	            }
 	        }
+	        notifySoupChanged(soupName, soupEntryIds);
     	}
     }
 
@@ -1437,11 +1531,12 @@ public class SmartStore  {
 	 * Delete soup elements selected by querySpec (and commits)
 	 * @param soupName
 	 * @param querySpec Query returning entries to delete (if querySpec uses smartSQL, it must select soup entry ids)
+	 * @return number of soup elements deleted
 	 */
-	public void deleteByQuery(String soupName, QuerySpec querySpec) {
+	public int deleteByQuery(String soupName, QuerySpec querySpec) {
 		final SQLiteDatabase db = getDatabase();
 		synchronized(db) {
-			deleteByQuery(soupName, querySpec, true);
+			return deleteByQuery(soupName, querySpec, true);
 		}
 	}
 
@@ -1450,12 +1545,14 @@ public class SmartStore  {
 	 * @param soupName
 	 * @param querySpec
 	 * @param handleTx
+	 * @return number of soup elements deleted
 	 */
-	public void deleteByQuery(String soupName, QuerySpec querySpec, boolean handleTx) {
+	public int deleteByQuery(String soupName, QuerySpec querySpec, boolean handleTx) {
 		final SQLiteDatabase db = getDatabase();
 		synchronized(db) {
 			String soupTableName = DBHelper.getInstance(db).getSoupTableName(db, soupName);
 			if (soupTableName == null) throw new SmartStoreException("Soup: " + soupName + " does not exist");
+			Long[] ids;
 			if (handleTx) {
 				db.beginTransaction();
 			}
@@ -1463,30 +1560,36 @@ public class SmartStore  {
                 String subQuerySql = String.format("SELECT %s FROM (%s) LIMIT %d", ID_COL, convertSmartSql(querySpec.idsSmartSql), querySpec.pageSize);
                 String[] args = querySpec.getArgs();
 
-                if (usesExternalStorage(soupName) && dbOpenHelper instanceof DBOpenHelper) {
-					// Query list of ids and remove them from external storage
-					Cursor c = null;
-					try {
-						c = db.query(soupTableName, new String[] { ID_COL }, buildInStatement(ID_COL, subQuerySql), args, null, null, null);
-						if (c.moveToFirst()) {
-							Long[] ids = new Long[c.getCount()];
-							int counter = 0;
-							do {
-								ids[counter++] = c.getLong(0);
-							} while (c.moveToNext());
-							((DBOpenHelper) dbOpenHelper).removeSoupBlob(soupTableName, ids);
-						}
-					} finally {
-						if (c != null) {
-							c.close();
-						}
+				// Resolve the ids once: re-running the sub query after deleting from one table
+				// (e.g. soup rows before fts rows, or fts rows before a MATCH query) would miss rows
+				ids = new Long[0];
+				Cursor c = null;
+				try {
+					c = db.query(soupTableName, new String[] { ID_COL }, buildInStatement(ID_COL, subQuerySql), args, null, null, null);
+					if (c.moveToFirst()) {
+						ids = new Long[c.getCount()];
+						int counter = 0;
+						do {
+							ids[counter++] = c.getLong(0);
+						} while (c.moveToNext());
+					}
+				} finally {
+					if (c != null) {
+						c.close();
 					}
-                }
+				}
 
-				DBHelper.getInstance(db).delete(db, soupTableName, buildInStatement(ID_COL, subQuerySql), args);
+				for (int start = 0; start < ids.length; start += DELETE_CHUNK_SIZE) {
+					Long[] chunk = Arrays.copyOfRange(ids, start, Math.min(start + DELETE_CHUNK_SIZE, ids.length));
+					DBHelper.getInstance(db).delete(db, soupTableName, getSoupEntryIdsPredicate(chunk));
 
-				if (hasFTS(soupName)) {
-					DBHelper.getInstance(db).delete(db, soupTableName + FTS_SUFFIX, buildInStatement(ROWID_COL, subQuerySql), args);
+					if (hasFTS(soupName)) {
+						DBHelper.getInstance(db).delete(db, soupTableName + FTS_SUFFIX, getRowIdsPredicate(chunk));
+					}
+
+					if (usesExternalStorage(soupName) && dbOpenHelper instanceof DBOpenHelper) {
+						((DBOpenHelper) dbOpenHelper).removeSoupBlob(soupTableName, chunk);
+					}
 				}
 
 				if (handleTx) {
@@ -1497,6 +1600,10 @@ public class SmartStore  {
 					db.endTransaction();
 				}
 			}
+			if (ids.length > 0) {
+				notifySoupChanged(soupName, ids);
+			}
+			return ids.length;
 		}
 	}
 
@@ -1671,6 +1778,19 @@ public class SmartStore  {
 		fts5
 	}
 
+	/**
+	 * Listener notified after soup elements are written
+	 * Called on the writing thread while it holds the database lock, and possibly before the enclosing
+	 * transaction commits when handleTx is false: implementations should only record or post work
+	 */
+	public interface SoupChangeListener {
+		/**
+		 * @param soupName
+		 * @param soupEntryIds ids of the created, updated or deleted entries or null if any entry may have changed
+		 */
+		void onSoupChanged(String soupName, Long[] soupEntryIds);
+	}
+
     /**
      * Exception thrown by smart store
      *